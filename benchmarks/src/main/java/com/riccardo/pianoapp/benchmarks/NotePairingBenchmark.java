@@ -0,0 +1,59 @@
+package com.riccardo.pianoapp.benchmarks;
+
+import com.riccardo.pianoapp.midi.NoteSchedule;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.sound.midi.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the note pairing of the compiled {@link NoteSchedule} with the forward scan that the animation code used
+ * to run for every NOTE_ON ({@code AnimationManager.getNoteDuration}), kept here as a baseline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class NotePairingBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int noteCount;
+
+    private Sequence sequence;
+
+    @Setup
+    public void setUp() throws InvalidMidiDataException {
+        sequence = SyntheticSequences.create(noteCount, 1);
+    }
+
+    @Benchmark
+    public NoteSchedule noteSchedule() {
+        return NoteSchedule.compile(sequence);
+    }
+
+    @Benchmark
+    public void legacyForwardScan(Blackhole blackhole) {
+        for (Track track : sequence.getTracks()) {
+            for (int i = 0; i < track.size(); i++) {
+                if (track.get(i).getMessage() instanceof ShortMessage sm
+                        && sm.getCommand() == ShortMessage.NOTE_ON && sm.getData2() > 0) {
+                    blackhole.consume(getNoteDuration(track, i));
+                }
+            }
+        }
+    }
+
+    private static long getNoteDuration(Track track, int noteIndex) {
+        for (int i = noteIndex + 1; i < track.size(); i++) {
+            MidiEvent nextEvent = track.get(i);
+            if (nextEvent.getMessage() instanceof ShortMessage sm) {
+                if (sm.getCommand() == ShortMessage.NOTE_OFF || (sm.getCommand() == ShortMessage.NOTE_ON && sm.getData2() == 0)) {
+                    return nextEvent.getTick() - track.get(noteIndex).getTick();
+                }
+            }
+        }
+        return 0;
+    }
+}
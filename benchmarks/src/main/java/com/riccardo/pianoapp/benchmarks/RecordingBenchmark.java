@@ -0,0 +1,127 @@
+package com.riccardo.pianoapp.benchmarks;
+
+import com.riccardo.pianoapp.recording.RecordingBuffer;
+import com.riccardo.pianoapp.recording.RecordingJournal;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sound.midi.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the recording of note events.
+ * <p>
+ * {@code directTrackInsert} builds and inserts a {@link MidiEvent} for every note as recording used to do on the input
+ * thread. {@code bufferOffer} is what the input thread does now, and {@code bufferOfferAndJournal} adds the work of
+ * the drain thread that converts the buffered events to ticks and appends them to a {@link RecordingJournal} on disk.
+ * {@code journalToMidiFile} is the conversion done when a take is saved. The recording manager itself needs the
+ * JavaFX toolkit, so these paths are driven directly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class RecordingBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int noteCount;
+
+    private static final int RESOLUTION = 480;
+    private static final int MICROS_PER_QUARTER = 500_000;
+    private static final double TICKS_PER_NANO = RESOLUTION / (MICROS_PER_QUARTER * 1000.0);
+
+    private final RecordingBuffer buffer = new RecordingBuffer(RecordingBuffer.DEFAULT_CAPACITY);
+    private Path journalDirectory;
+    private Path recordedJournal;
+    private Path midiFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        journalDirectory = Files.createTempDirectory("recording-benchmark");
+        try (RecordingJournal journal = RecordingJournal.create(journalDirectory, RESOLUTION, MICROS_PER_QUARTER)) {
+            for (int i = 0; i < noteCount; i++) {
+                int note = 21 + i % 88;
+                long tick = Math.round(i * 50_000_000L * TICKS_PER_NANO);
+                journal.append(tick, ShortMessage.NOTE_ON, note, 64);
+                journal.append(tick + 24, ShortMessage.NOTE_OFF, note, 64);
+            }
+            recordedJournal = journal.getPath();
+        }
+        midiFile = journalDirectory.resolve("recording.mid");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(journalDirectory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public Track directTrackInsert() throws InvalidMidiDataException {
+        Track track = new Sequence(Sequence.PPQ, 24).createTrack();
+        long tick = 0;
+        for (int i = 0; i < noteCount; i++) {
+            int note = 21 + i % 88;
+            tick += 5;
+            ShortMessage on = new ShortMessage();
+            on.setMessage(ShortMessage.NOTE_ON, 0, note, 64);
+            track.add(new MidiEvent(on, tick));
+            ShortMessage off = new ShortMessage();
+            off.setMessage(ShortMessage.NOTE_OFF, 0, note, 64);
+            track.add(new MidiEvent(off, tick + 3));
+        }
+        return track;
+    }
+
+    @Benchmark
+    public long bufferOffer() {
+        long sum = 0;
+        int chunk = buffer.getCapacity() / 4;
+        for (int i = 0; i < noteCount; i++) {
+            int note = 21 + i % 88;
+            buffer.offer(i * 50_000_000L, ShortMessage.NOTE_ON, note, 64);
+            buffer.offer(i * 50_000_000L + 30_000_000L, ShortMessage.NOTE_OFF, note, 64);
+            if (i % chunk == 0) {
+                // Empty the ring without work, as if the drain thread kept up.
+                sum += buffer.drain((nanos, command, data1, data2) -> { });
+            }
+        }
+        return sum + buffer.drain((nanos, command, data1, data2) -> { });
+    }
+
+    @Benchmark
+    public long bufferOfferAndJournal() throws IOException {
+        RecordingJournal journal = RecordingJournal.create(journalDirectory, RESOLUTION, MICROS_PER_QUARTER);
+        try (journal) {
+            RecordingBuffer.EventSink sink = (nanos, command, data1, data2) ->
+                    journal.append(Math.round(nanos * TICKS_PER_NANO), command, data1, data2);
+            int chunk = buffer.getCapacity() / 4;
+            for (int i = 0; i < noteCount; i++) {
+                int note = 21 + i % 88;
+                buffer.offer(i * 50_000_000L, ShortMessage.NOTE_ON, note, 64);
+                buffer.offer(i * 50_000_000L + 30_000_000L, ShortMessage.NOTE_OFF, note, 64);
+                if (i % chunk == 0) {
+                    buffer.drain(sink);
+                    journal.syncIfDue();
+                }
+            }
+            buffer.drain(sink);
+        } finally {
+            Files.delete(journal.getPath());
+        }
+        return journal.getEventCount();
+    }
+
+    @Benchmark
+    public long journalToMidiFile() throws IOException {
+        return RecordingJournal.writeMidiFile(recordedJournal, midiFile);
+    }
+}
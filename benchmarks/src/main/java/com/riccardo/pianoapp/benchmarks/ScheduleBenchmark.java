@@ -0,0 +1,105 @@
+package com.riccardo.pianoapp.benchmarks;
+
+import com.riccardo.pianoapp.midi.ChannelEvents;
+import com.riccardo.pianoapp.midi.NoteSchedule;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sound.midi.InvalidMidiDataException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the schedule work done when playback starts and while it runs.
+ * <p>
+ * {@code startAt} is the lookup {@code AnimationManager.startNoteAnimations} does to start from a tick, and
+ * {@code seek} adds the search of the notes held at that tick, which are played again after a seek, and of the
+ * channel events that restore the state of the channels there.
+ * {@code loopSlice} is the one-off cost of setting an eight-bar A-B loop, which slices the schedule for that range.
+ * {@code playThrough} walks the whole schedule in 60 Hz frames with the same spawn and trigger cursors as the render
+ * loop, without drawing, so it is the per-playback cost of the schedule independent of the renderer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ScheduleBenchmark {
+    private static final int BATCH = 1024;
+    private static final double FRAME_MILLIS = 1000.0 / 60.0;
+    private static final double LEAD_MILLIS = 600.0;
+    private static final long LOOP_TICKS = 8 * 4 * SyntheticSequences.RESOLUTION;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int noteCount;
+
+    private NoteSchedule schedule;
+    private final long[] startTicks = new long[BATCH];
+    private final int[] chaseBuffer = new int[ChannelEvents.CHASE_BUFFER_SIZE];
+
+    @Setup
+    public void setUp() throws InvalidMidiDataException {
+        schedule = NoteSchedule.compile(SyntheticSequences.create(noteCount, 64));
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < BATCH; i++) {
+            startTicks[i] = random.nextLong(schedule.getLengthTicks());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int startAt() {
+        int sum = 0;
+        for (long tick : startTicks) {
+            sum += schedule.firstIndexAtOrAfter(tick);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int seek() {
+        int sum = 0;
+        ChannelEvents events = schedule.getChannelEvents();
+        for (long tick : startTicks) {
+            sum += schedule.firstIndexAtOrAfter(tick) + schedule.getHeldNotes(tick).length;
+            sum += events.getChaseEvents(events.firstIndexAtOrAfter(tick), chaseBuffer);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public NoteSchedule loopSlice() {
+        long start = startTicks[0] % Math.max(1, schedule.getLengthTicks() - LOOP_TICKS);
+        return schedule.slice(start, start + LOOP_TICKS);
+    }
+
+    @Benchmark
+    public long playThrough() {
+        int[] visible = new int[1024];
+        int visibleCount = 0;
+        int nextNote = 0;
+        int nextTrigger = 0;
+        long work = 0;
+        double endMillis = schedule.getLengthMicros() / 1000.0;
+        for (double now = -LEAD_MILLIS; now <= endMillis; now += FRAME_MILLIS) {
+            while (nextNote < schedule.size() && schedule.getStartMicros(nextNote) / 1000.0 <= now + LEAD_MILLIS) {
+                if (visibleCount == visible.length) {
+                    visible = Arrays.copyOf(visible, visibleCount * 2);
+                }
+                visible[visibleCount++] = nextNote++;
+            }
+            for (int i = visibleCount - 1; i >= 0; i--) {
+                if (schedule.getEndMicros(visible[i]) / 1000.0 <= now) {
+                    visible[i] = visible[--visibleCount];
+                }
+            }
+            while (nextTrigger < schedule.size() && schedule.getStartMicros(nextTrigger) / 1000.0 <= now) {
+                work += schedule.getKey(nextTrigger++);
+            }
+            work += visibleCount;
+        }
+        return work;
+    }
+}
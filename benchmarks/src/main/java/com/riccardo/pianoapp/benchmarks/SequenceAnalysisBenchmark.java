@@ -0,0 +1,35 @@
+package com.riccardo.pianoapp.benchmarks;
+
+import com.riccardo.pianoapp.midi.SequenceAnalysis;
+import com.riccardo.pianoapp.midi.SequenceAnalyzer;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.Sequence;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the analysis run when a MIDI file is loaded: tempo map, note pairing and statistics in one pass.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class SequenceAnalysisBenchmark {
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int noteCount;
+
+    private Sequence sequence;
+
+    @Setup
+    public void setUp() throws InvalidMidiDataException {
+        sequence = SyntheticSequences.create(noteCount, 64);
+    }
+
+    @Benchmark
+    public SequenceAnalysis analyze() {
+        return SequenceAnalyzer.analyze(sequence);
+    }
+}
@@ -0,0 +1,73 @@
+package com.riccardo.pianoapp.benchmarks;
+
+import com.riccardo.pianoapp.midi.TempoMap;
+
+import javax.sound.midi.*;
+import java.util.SplittableRandom;
+
+/**
+ * Generates reproducible MIDI sequences of a given size for the benchmarks.
+ * <p>
+ * Notes are spread over several tracks and channels, overlap each other and use both NOTE_OFF and NOTE_ON with
+ * velocity 0 to release, like real files do. Each track sets its program and presses and releases the sustain pedal
+ * every {@value #PEDAL_INTERVAL} notes. Tempo changes are placed at regular intervals on the first track.
+ */
+public final class SyntheticSequences {
+    public static final int RESOLUTION = 480;
+    public static final int TRACKS = 4;
+
+    private static final long SEED = 0x5EED_CAFEL;
+    private static final int LOWEST_KEY = 21;
+    private static final int KEY_RANGE = 88;
+    private static final int PEDAL_INTERVAL = 8;
+    private static final int SUSTAIN_PEDAL = 64;
+
+    private SyntheticSequences() {
+    }
+
+    /**
+     * Creates a sequence with the given number of notes.
+     *
+     * @param noteCount    The total number of notes over all tracks.
+     * @param tempoChanges The number of tempo meta events to add.
+     * @return The generated sequence.
+     * @throws InvalidMidiDataException If a message cannot be built.
+     */
+    public static Sequence create(int noteCount, int tempoChanges) throws InvalidMidiDataException {
+        Sequence sequence = new Sequence(Sequence.PPQ, RESOLUTION);
+        SplittableRandom random = new SplittableRandom(SEED);
+        long lastTick = 0;
+        for (int t = 0; t < TRACKS; t++) {
+            Track track = sequence.createTrack();
+            int notes = noteCount / TRACKS + (t < noteCount % TRACKS ? 1 : 0);
+            long tick = 0;
+            track.add(new MidiEvent(new ShortMessage(ShortMessage.PROGRAM_CHANGE, t, t, 0), 0));
+            for (int n = 0; n < notes; n++) {
+                tick += random.nextInt(RESOLUTION / 4);
+                if (n % PEDAL_INTERVAL == 0) {
+                    int pedal = (n / PEDAL_INTERVAL) % 2 == 0 ? 127 : 0;
+                    track.add(new MidiEvent(new ShortMessage(ShortMessage.CONTROL_CHANGE, t, SUSTAIN_PEDAL, pedal), tick));
+                }
+                int key = LOWEST_KEY + random.nextInt(KEY_RANGE);
+                long duration = 1 + random.nextInt(RESOLUTION * 2);
+                track.add(new MidiEvent(new ShortMessage(ShortMessage.NOTE_ON, t, key, 1 + random.nextInt(127)), tick));
+                ShortMessage off = random.nextBoolean()
+                        ? new ShortMessage(ShortMessage.NOTE_OFF, t, key, 64)
+                        : new ShortMessage(ShortMessage.NOTE_ON, t, key, 0);
+                track.add(new MidiEvent(off, tick + duration));
+                lastTick = Math.max(lastTick, tick + duration);
+            }
+        }
+        Track conductor = sequence.getTracks()[0];
+        for (int i = 0; i < tempoChanges; i++) {
+            long tick = lastTick * i / Math.max(1, tempoChanges);
+            conductor.add(new MidiEvent(tempo(300_000 + random.nextInt(700_000)), tick));
+        }
+        return sequence;
+    }
+
+    private static MetaMessage tempo(int microsPerQuarter) throws InvalidMidiDataException {
+        byte[] data = {(byte) (microsPerQuarter >> 16), (byte) (microsPerQuarter >> 8), (byte) microsPerQuarter};
+        return new MetaMessage(TempoMap.TEMPO_META_TYPE, data, data.length);
+    }
+}
@@ -0,0 +1,68 @@
+package com.riccardo.pianoapp.benchmarks;
+
+import com.riccardo.pianoapp.midi.TempoMap;
+import org.openjdk.jmh.annotations.*;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.Sequence;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures tick-to-time and time-to-tick conversion through a {@link TempoMap} with a varying number of tempo
+ * segments. Conversions are measured over a batch of random positions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TempoMapBenchmark {
+    private static final int BATCH = 1024;
+
+    @Param({"1", "64", "4096"})
+    public int tempoChanges;
+
+    private Sequence sequence;
+    private TempoMap tempoMap;
+    private final long[] ticks = new long[BATCH];
+    private final double[] micros = new double[BATCH];
+
+    @Setup
+    public void setUp() throws InvalidMidiDataException {
+        sequence = SyntheticSequences.create(10_000, tempoChanges);
+        tempoMap = TempoMap.build(sequence);
+        SplittableRandom random = new SplittableRandom(42);
+        long length = sequence.getTickLength();
+        for (int i = 0; i < BATCH; i++) {
+            ticks[i] = random.nextLong(length);
+            micros[i] = tempoMap.tickToMicros(random.nextLong(length));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public double tickToMicros() {
+        double sum = 0;
+        for (long tick : ticks) {
+            sum += tempoMap.tickToMicros(tick);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long microsToTick() {
+        long sum = 0;
+        for (double position : micros) {
+            sum += tempoMap.microsToTick(position);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public TempoMap build() {
+        return TempoMap.build(sequence);
+    }
+}
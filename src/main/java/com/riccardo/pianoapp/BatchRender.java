@@ -0,0 +1,129 @@
+package com.riccardo.pianoapp;
+
+import com.riccardo.pianoapp.render.OfflineRenderer;
+import com.riccardo.pianoapp.render.RenderResult;
+import com.riccardo.pianoapp.sound.SoundbankCache;
+
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Soundbank;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Command-line entry point that renders every MIDI file of a directory to WAV in parallel.
+ * <p>
+ * Usage: {@code BatchRender <directory> [--out <directory>] [--threads <count>]}. Each worker renders with its own
+ * synthesizer, and the soundbank is parsed once and shared, so throughput scales with the number of workers up to
+ * the number of cores, which is the default pool size. Requires the same {@code --add-exports} option as
+ * {@link OfflineRenderer}.
+ */
+public class BatchRender {
+
+    public static void main(String[] args) throws Exception {
+        Path inputDirectory = null;
+        Path outputDirectory = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean valid = true;
+        for (int i = 0; i < args.length && valid; i++) {
+            boolean hasValue = i + 1 < args.length;
+            switch (args[i]) {
+                case "--out" -> {
+                    valid = hasValue;
+                    if (hasValue) {
+                        outputDirectory = Path.of(args[++i]);
+                    }
+                }
+                case "--threads" -> {
+                    threads = hasValue ? parseCount(args[++i]) : 0;
+                    valid = threads > 0;
+                }
+                default -> inputDirectory = Path.of(args[i]);
+            }
+        }
+        if (!valid || inputDirectory == null) {
+            System.err.println("Usage: BatchRender <directory> [--out <directory>] [--threads <count>]");
+            System.exit(2);
+        }
+        if (outputDirectory == null) {
+            outputDirectory = inputDirectory;
+        }
+        Files.createDirectories(outputDirectory);
+        System.exit(render(listMidiFiles(inputDirectory), outputDirectory, threads) ? 0 : 1);
+    }
+
+    /**
+     * Parses a positive count.
+     *
+     * @return The count, or 0 if the value is not a positive number.
+     */
+    private static int parseCount(String value) {
+        try {
+            return Math.max(0, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static List<Path> listMidiFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+                return name.endsWith(".mid") || name.endsWith(".midi");
+            }).sorted().toList();
+        }
+    }
+
+    /**
+     * Renders the files on a pool of workers and prints the timing of each file and the total throughput.
+     *
+     * @return {@code true} if every file was rendered.
+     */
+    private static boolean render(List<Path> files, Path outputDirectory, int threads) throws Exception {
+        Soundbank soundbank = SoundbankCache.getPianoSoundbank();
+        OfflineRenderer renderer = new OfflineRenderer(soundbank, OfflineRenderer.DEFAULT_FORMAT);
+        System.out.printf("Rendering %d files with %d workers%n", files.size(), threads);
+
+        long start = System.nanoTime();
+        List<Future<RenderResult>> results = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (Path file : files) {
+                Path output = outputDirectory.resolve(wavName(file));
+                results.add(pool.submit(() -> renderer.render(MidiSystem.getSequence(file.toFile()), output)));
+            }
+
+            boolean allRendered = true;
+            long audioNanos = 0;
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    RenderResult result = results.get(i).get();
+                    audioNanos += result.audioNanos();
+                    System.out.println(result);
+                } catch (ExecutionException e) {
+                    allRendered = false;
+                    System.err.println(files.get(i).getFileName() + ": failed: " + e.getCause());
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("Total: %.1f s of audio in %.2f s (%.1fx real time, %.2f files/s)%n",
+                    audioNanos / 1e9, elapsed / 1e9, (double) audioNanos / elapsed, files.size() / (elapsed / 1e9));
+            return allRendered;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static String wavName(Path file) {
+        String name = file.getFileName().toString();
+        return name.substring(0, name.lastIndexOf('.')) + ".wav";
+    }
+}
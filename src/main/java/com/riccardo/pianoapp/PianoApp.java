@@ -1,5 +1,6 @@
 package com.riccardo.pianoapp;
 
+import com.riccardo.pianoapp.metrics.StartupTimeline;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -15,8 +16,11 @@ public class PianoApp extends Application {
 
     @Override
     public void start(Stage primaryStage) throws Exception {
+        StartupTimeline timeline = StartupTimeline.getInstance();
+        long start = timeline.now();
         FXMLLoader loader = new FXMLLoader(getClass().getResource("piano-view.fxml"));
         Parent root = loader.load();
+        timeline.record("fxml-load", start);
         PianoController controller = loader.getController();
         controller.setStage(primaryStage);
 
@@ -28,6 +32,7 @@ public class PianoApp extends Application {
         primaryStage.setScene(scene);
         primaryStage.show();
         primaryStage.setResizable(false);
+        timeline.milestone("window-shown");
     }
 
     public static void main(String[] args) {
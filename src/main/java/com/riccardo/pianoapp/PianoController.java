@@ -1,13 +1,27 @@
 package com.riccardo.pianoapp;
 
 import com.riccardo.pianoapp.animation.AnimationManager;
-import com.riccardo.pianoapp.midi.MidiManager;
+import com.riccardo.pianoapp.animation.NodeNoteRenderer;
+import com.riccardo.pianoapp.animation.PlaybackProgress;
+import com.riccardo.pianoapp.animation.RenderMode;
+import com.riccardo.pianoapp.metrics.LatencyMetrics;
+import com.riccardo.pianoapp.metrics.StartupTimeline;
+import com.riccardo.pianoapp.midi.LoadedMidi;
+import com.riccardo.pianoapp.midi.LoopRegion;
+import com.riccardo.pianoapp.midi.MidiLoadTask;
+import com.riccardo.pianoapp.midi.PlaybackClock;
 import com.riccardo.pianoapp.recording.RecordingManager;
+import com.riccardo.pianoapp.sound.KeyHighlights;
+import com.riccardo.pianoapp.sound.MidiInputManager;
+import com.riccardo.pianoapp.sound.NoteDispatcher;
 import com.riccardo.pianoapp.sound.NoteHandler;
+import com.riccardo.pianoapp.sound.SoundbankCache;
+import com.riccardo.pianoapp.sound.VoiceManager;
 import com.riccardo.pianoapp.state.PausedState;
 import com.riccardo.pianoapp.state.PlaybackState;
 import com.riccardo.pianoapp.state.PlayingState;
 import com.riccardo.pianoapp.state.StoppedState;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.*;
@@ -15,16 +29,25 @@ import javafx.scene.layout.Pane;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javax.sound.midi.*;
+import javax.sound.sampled.SourceDataLine;
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.net.URL;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Controller for the Piano MIDI application.
  */
 public class PianoController implements Initializable {
+    private static final Logger LOGGER = Logger.getLogger(PianoController.class.getName());
 
     // Variabili di stato
     private PlaybackState playbackState;
@@ -32,13 +55,19 @@ public class PianoController implements Initializable {
     private boolean isPaused = false;
     private boolean isSequenceLoaded = false;
     private long currentTick = 0;
-    public long pauseTime;
+    private long loopStartTick = -1;
+    private LoopRegion loop;
     private double playbackSpeed = 1.0;
     private int bpm = 120;
+    private int sequenceBpm = 120;
+    private final PlaybackClock playbackClock = new PlaybackClock();
+    private final StartupTimeline timeline = StartupTimeline.getInstance();
 
     public static MidiChannel channel;
-    private Sequence sequence;
+    private LoadedMidi loadedMidi;
+    private MidiLoadTask loadTask;
     private Synthesizer synthesizer;
+    private Soundbank soundbank;
 
     @FXML
     private Button cKey, cDKey, dKey, dDKey, eKey, fKey, fDKey, gKey, gDKey, aKey, aDKey, bKey;
@@ -49,12 +78,14 @@ public class PianoController implements Initializable {
     @FXML
     private Button cKey2, cDKey2, dKey2, dDKey2, eKey2, fKey2, fDKey2, gKey2, gDKey2, aKey2, aDKey2, bKey2;
     @FXML
-    private Button loadMidiButton, playButton, pauseButton, stopButton;
+    private Button loadMidiButton, playButton, pauseButton, stopButton, loopButton;
     @FXML
     private Pane notePane;
     @FXML
     private TextField bpmTextField;
     @FXML
+    private ChoiceBox<RenderMode> rendererChoiceBox;
+    @FXML
     private ProgressBar progressBar;
     @FXML
     private Label fileNameLabel;
@@ -62,31 +93,43 @@ public class PianoController implements Initializable {
     private Button recordButton;
     @FXML
     private Label recordingTimeLabel;
+    @FXML
+    private ProgressIndicator exportProgressIndicator;
+    @FXML
+    private Label playbackTimeLabel;
 
     private final Map<Button, Integer> noteMap = new HashMap<>();
     private final Map<Integer, Button> reverseNoteMap = new HashMap<>();
     private final Map<Button, String> originalStyleMap = new HashMap<>();
+    private final KeyHighlights keyHighlights = new KeyHighlights(reverseNoteMap, originalStyleMap);
 
     public AnimationManager animationManager;
     private RecordingManager recordingManager;
-    MidiManager midiManager;
     private UiManager uiManager;
+    private PlaybackProgress playbackProgress;
     private NoteHandler noteHandler;
+    private NoteDispatcher noteDispatcher;
+    private MidiInputManager midiInputManager;
 
+    /**
+     * Sets up the user interface on the JavaFX thread and starts the audio initialization in the background. The
+     * window can be shown as soon as this returns; playback, recording and the piano keys are enabled once the audio
+     * is ready.
+     */
     @Override
     public void initialize(URL location, ResourceBundle resources) {
-        try {
-            initializeSynthesizer();
-            setupManagers();
-            setupNoteMaps();
-            saveOriginalStyles();
-            setupButtonActions();
-            fileNameLabel.setText("No file loaded");
-            playbackState = new StoppedState(); // Imposta lo stato iniziale su "Stopped"
-
-        } catch (MidiUnavailableException | InvalidMidiDataException | IOException e) {
-            e.printStackTrace();
-        }
+        long start = timeline.now();
+        startAudioInitialization();
+        setupManagers();
+        setupNoteMaps();
+        saveOriginalStyles();
+        setupButtonActions();
+        setAudioControlsDisabled(true);
+        LatencyMetrics.getInstance().registerMBeans();
+        recoverRecordings();
+        fileNameLabel.setText("No file loaded");
+        playbackState = new StoppedState(); // Imposta lo stato iniziale su "Stopped"
+        timeline.record("ui-initialize", start);
     }
 
     /**
@@ -98,23 +141,189 @@ public class PianoController implements Initializable {
         stage.setOnCloseRequest(event -> closeResources());
     }
 
-    private void initializeSynthesizer() throws MidiUnavailableException, InvalidMidiDataException, IOException {
-        synthesizer = MidiSystem.getSynthesizer();
-        synthesizer.open();
+    /**
+     * Opens the synthesizer and parses the soundbank concurrently, then finishes the audio setup on the JavaFX thread.
+     * Only the piano program is loaded here; the programs of a sequence are loaded when it is selected.
+     */
+    private void startAudioInitialization() {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        CompletableFuture<Synthesizer> synthesizerFuture = CompletableFuture.supplyAsync(
+                () -> timed("synthesizer-open", this::openSynthesizer), executor);
+        CompletableFuture<Soundbank> soundbankFuture = CompletableFuture.supplyAsync(
+                () -> timed("soundbank-load", SoundbankCache::getPianoSoundbank), executor);
+        executor.shutdown();
+
+        synthesizerFuture.thenCombine(soundbankFuture, (openedSynthesizer, loadedSoundbank) -> {
+                    long start = timeline.now();
+                    SoundbankCache.loadPrograms(openedSynthesizer, loadedSoundbank, new int[]{0});
+                    timeline.record("instruments-load", start);
+                    Platform.runLater(() -> audioReady(openedSynthesizer, loadedSoundbank));
+                    return loadedSoundbank;
+                })
+                .exceptionally(e -> {
+                    e.printStackTrace();
+                    Platform.runLater(() -> uiManager.showError("Audio could not be initialized: " + e.getCause()));
+                    return null;
+                });
+    }
+
+    /**
+     * Opens the synthesizer, if possible without the default soundbank: it is slow to build and the programs in use are
+     * loaded from the piano soundbank anyway. Otherwise the default instruments loaded by {@link Synthesizer#open()} are
+     * unloaded again.
+     */
+    private Synthesizer openSynthesizer() throws MidiUnavailableException {
+        Synthesizer opened = MidiSystem.getSynthesizer();
+        if (!openWithoutDefaultSoundbank(opened)) {
+            opened.open();
+            Soundbank defaultSoundbank = opened.getDefaultSoundbank();
+            if (defaultSoundbank != null) {
+                opened.unloadAllInstruments(defaultSoundbank);
+            }
+        }
+        return opened;
+    }
+
+    /**
+     * Calls Gervill's {@code AudioSynthesizer.open(SourceDataLine, Map)}. The interface is internal to the JDK, so it is
+     * looked up reflectively and only works when {@code com.sun.media.sound} is exported to this module.
+     *
+     * @return Whether the synthesizer was opened.
+     */
+    private static boolean openWithoutDefaultSoundbank(Synthesizer synthesizer) {
+        try {
+            Class<?> audioSynthesizer = Class.forName("com.sun.media.sound.AudioSynthesizer");
+            if (!audioSynthesizer.isInstance(synthesizer)) {
+                return false;
+            }
+            Method open = audioSynthesizer.getMethod("open", SourceDataLine.class, Map.class);
+            open.invoke(synthesizer, null, Map.of("load default soundbank", false));
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "Opening the synthesizer with its default soundbank", e);
+            return false;
+        }
+    }
+
+    /**
+     * A startup step that may fail with a checked exception.
+     */
+    @FunctionalInterface
+    private interface StartupStep<T> {
+        T run() throws Exception;
+    }
+
+    private <T> T timed(String phase, StartupStep<T> step) {
+        long start = timeline.now();
+        try {
+            return step.run();
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        } finally {
+            timeline.record(phase, start);
+        }
+    }
 
-        String soundFontPath = "src/main/resources/com/riccardo/pianoapp/sound/yamaha_grand_piano.sf2";
-        Soundbank soundbank = MidiSystem.getSoundbank(new File(soundFontPath));
-        synthesizer.loadAllInstruments(soundbank);
+    /**
+     * Completes the audio setup on the JavaFX thread and enables the audio features.
+     */
+    private void audioReady(Synthesizer openedSynthesizer, Soundbank loadedSoundbank) {
+        long start = timeline.now();
+        synthesizer = openedSynthesizer;
+        soundbank = loadedSoundbank;
         channel = synthesizer.getChannels()[0];
         channel.programChange(0);
+        noteDispatcher.setChannels(synthesizer.getChannels());
+        noteHandler = new NoteHandler(channel, keyHighlights, recordingManager, noteMap);
+        midiInputManager = new MidiInputManager(channel, recordingManager, keyHighlights);
+        if (loadedMidi != null) {
+            loadInstruments(loadedMidi.analysis().getPrograms());
+        }
+        openMidiInputs();
+        setAudioControlsDisabled(false);
+        timeline.record("audio-ready", start);
+        timeline.milestone("audio-enabled");
+        if (StartupTimeline.isReportEnabled()) {
+            LOGGER.info(timeline.report());
+            logReportAfterFirstNote();
+        }
+    }
+
+    /**
+     * Logs the startup timeline again once the first note has been played, from a background thread rather than
+     * from the playback or input thread that played it.
+     */
+    private void logReportAfterFirstNote() {
+        Thread.ofVirtual().name("startup-report").start(() -> {
+            try {
+                timeline.awaitFirstNote();
+                LOGGER.info(timeline.report());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+
+    /**
+     * Loads the instruments of a sequence. Programs missing from the piano soundbank are loaded in the background
+     * from the default soundbank of the synthesizer, which is slow to build; until then they play with the piano.
+     */
+    private void loadInstruments(int[] programs) {
+        SoundbankCache.loadPrograms(synthesizer, soundbank, programs);
+        int[] missing = SoundbankCache.missingPrograms(soundbank, programs);
+        if (missing.length > 0) {
+            Thread.ofVirtual().name("instrument-load").start(() -> {
+                Soundbank defaultSoundbank = synthesizer.getDefaultSoundbank();
+                if (defaultSoundbank != null) {
+                    SoundbankCache.loadPrograms(synthesizer, defaultSoundbank, missing);
+                }
+            });
+        }
+    }
+
+    private boolean isAudioReady() {
+        return noteHandler != null;
+    }
+
+    private void setAudioControlsDisabled(boolean disabled) {
+        playButton.setDisable(disabled);
+        recordButton.setDisable(disabled);
     }
 
     private void setupManagers() {
-        animationManager = new AnimationManager(notePane, progressBar, originalStyleMap);
-        recordingManager = new RecordingManager(recordingTimeLabel, recordButton);
-        midiManager = new MidiManager(synthesizer, channel);
+        playbackProgress = new PlaybackProgress(progressBar, playbackTimeLabel);
+        noteDispatcher = new NoteDispatcher(playbackClock);
+        animationManager = new AnimationManager(notePane, playbackProgress, keyHighlights, playbackClock, noteDispatcher);
+        recordingManager = new RecordingManager(recordingTimeLabel, recordButton, exportProgressIndicator);
         uiManager = new UiManager();
-        noteHandler = new NoteHandler(channel, originalStyleMap, recordingManager, noteMap);
+    }
+
+    /**
+     * Recovers, in the background, the recordings interrupted by a crash and reports where they were saved.
+     */
+    private void recoverRecordings() {
+        Thread.ofVirtual().name("recording-recovery").start(() -> {
+            try {
+                List<Path> recovered = recordingManager.recoverJournals();
+                if (!recovered.isEmpty()) {
+                    StringBuilder message = new StringBuilder("Recovered interrupted recordings:");
+                    recovered.forEach(file -> message.append('\n').append(file));
+                    Platform.runLater(() -> uiManager.showInformation(message.toString()));
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Connects the MIDI input devices in the background, as opening them can take a while.
+     */
+    private void openMidiInputs() {
+        Thread.ofVirtual().name("midi-input-open").start(() -> {
+            List<String> devices = midiInputManager.openInputDevices();
+            LOGGER.fine(() -> "MIDI input devices: " + devices);
+        });
     }
 
     private void setupNoteMaps() {
@@ -161,15 +370,13 @@ public class PianoController implements Initializable {
             reverseNoteMap.put(note, button);
 
             button.setOnMousePressed(event -> {
-                noteHandler.playNoteWithAnimation(button, note);
-                if (recordingManager.isRecording()) {
-                    recordingManager.recordNoteOn(note);
+                if (isAudioReady()) {
+                    noteHandler.playNoteWithAnimation(button, note);
                 }
             });
             button.setOnMouseReleased(event -> {
-                noteHandler.stopNoteWithAnimation(button);
-                if (recordingManager.isRecording()) {
-                    recordingManager.recordNoteOff(note, System.currentTimeMillis() - recordingManager.getRecordingStartTime());
+                if (isAudioReady()) {
+                    noteHandler.stopNoteWithAnimation(button);
                 }
             });
         }
@@ -189,8 +396,14 @@ public class PianoController implements Initializable {
         playButton.setOnAction(event -> playMidi());
         stopButton.setOnAction(event -> stopMidi());
         pauseButton.setOnAction(event -> pauseMidi());
+        loopButton.setOnAction(event -> toggleLoop());
         recordButton.setOnAction(event -> toggleRecording());
         bpmTextField.setOnAction(event -> updateBpm());
+        progressBar.setOnMousePressed(event -> seekToProgress(event.getX()));
+        progressBar.setOnMouseDragged(event -> seekToProgress(event.getX()));
+        rendererChoiceBox.getItems().setAll(RenderMode.values());
+        rendererChoiceBox.setValue(animationManager.getRenderMode());
+        rendererChoiceBox.setOnAction(event -> animationManager.setRenderMode(rendererChoiceBox.getValue()));
     }
 
     private void loadMidiFile() {
@@ -199,25 +412,146 @@ public class PianoController implements Initializable {
         File selectedFile = fileChooser.showOpenDialog(null);
 
         if (selectedFile != null) {
-            try {
-                sequence = MidiSystem.getSequence(selectedFile);
-                isSequenceLoaded = true;
-                fileNameLabel.setText(selectedFile.getName());
-
-                int defaultBpm = midiManager.getBpmFromMidi(sequence);
-                bpmTextField.setText(String.valueOf(defaultBpm));
-                bpm = defaultBpm;
-                playbackSpeed = bpm / 120.0;
-                updateAnimationSpeeds();
-                playbackState = new StoppedState(); // Quando si carica un nuovo file, la riproduzione è fermata
-
-            } catch (InvalidMidiDataException | IOException e) {
-                e.printStackTrace();
+            if (loadTask != null && loadTask.isRunning()) {
+                loadTask.cancel();  // Un nuovo file annulla il caricamento in corso
+            }
+            stopMidi();
+            fileNameLabel.setText("Loading " + selectedFile.getName() + "...");
+
+            MidiLoadTask task = new MidiLoadTask(selectedFile);
+            progressBar.progressProperty().bind(task.progressProperty());
+            task.setOnSucceeded(event -> {
+                finishLoading(task);
+                switchToSequence(task.getValue());
+            });
+            task.setOnFailed(event -> {
+                finishLoading(task);
+                fileNameLabel.setText(loadedMidi != null ? loadedMidi.file().getName() : "No file loaded");
+                task.getException().printStackTrace();
+                uiManager.showError("Failed to load " + selectedFile.getName() + ".");
+            });
+            task.setOnCancelled(event -> finishLoading(task));
+            loadTask = task;
+            task.startOnVirtualThread();
+        }
+    }
+
+    private void finishLoading(MidiLoadTask task) {
+        if (loadTask == task) {
+            progressBar.progressProperty().unbind();
+            playbackProgress.reset();
+            loadTask = null;
+        }
+    }
+
+    /**
+     * Replaces the current sequence with a freshly loaded one, on the JavaFX thread.
+     *
+     * @param loaded The loaded sequence and its analysis.
+     */
+    private void switchToSequence(LoadedMidi loaded) {
+        stopMidi();
+        loadedMidi = loaded;
+        isSequenceLoaded = true;
+        setLoop(null, 0);
+        fileNameLabel.setText(loaded.file().getName());
+
+        fileNameLabel.setTooltip(new Tooltip(loaded.analysis().getSummary()));
+        if (isAudioReady()) {
+            loadInstruments(loaded.analysis().getPrograms());
+        }
+
+        int defaultBpm = (int) Math.round(loaded.analysis().getInitialBpm());
+        bpmTextField.setText(String.valueOf(defaultBpm));
+        sequenceBpm = defaultBpm;
+        bpm = defaultBpm;
+        updatePlaybackSpeed();
+        playbackState = new StoppedState(); // Quando si carica un nuovo file, la riproduzione è fermata
+    }
+
+    /**
+     * Seeks to the position under the mouse on the progress bar.
+     *
+     * @param x The x-coordinate of the mouse in the progress bar.
+     */
+    private void seekToProgress(double x) {
+        if (loadedMidi == null || loadTask != null) {
+            return;  // Durante il caricamento la progress bar mostra l'avanzamento del file
+        }
+        double fraction = Math.max(0.0, Math.min(1.0, x / progressBar.getWidth()));
+        seek(loadedMidi.tempoMap().microsToTick(fraction * loadedMidi.schedule().getLengthMicros()));
+    }
+
+    /**
+     * Moves playback to a tick. While stopped, the position is kept for the next start.
+     *
+     * @param tick The tick to move to.
+     */
+    public void seek(long tick) {
+        if (loadedMidi == null) {
+            return;
+        }
+        currentTick = Math.max(0, Math.min(tick, loadedMidi.schedule().getLengthTicks()));
+        if (loop != null && !loop.contains(currentTick)) {
+            clearLoopState();  // Un seek fuori dal loop lo annulla
+        }
+        if (animationManager.isActive()) {
+            animationManager.seek(currentTick);
+        } else {
+            playbackProgress.update(loadedMidi.tempoMap().tickToMicros(currentTick), loadedMidi.schedule().getLengthMicros());
+        }
+    }
+
+    /**
+     * Marks the start of the loop at the current position, then its end, then clears the loop. Once both ends are
+     * set, the range is sliced from the schedule once and played over and over from its start.
+     */
+    private void toggleLoop() {
+        if (loadedMidi == null || loadTask != null) {
+            return;
+        }
+        long tick = animationManager.isActive() ? animationManager.getPositionTick() : currentTick;
+        if (loop != null) {
+            setLoop(null, tick);
+        } else if (loopStartTick < 0) {
+            loopStartTick = tick;
+            loopButton.setText("Set B");
+        } else if (tick != loopStartTick) {
+            long start = Math.min(loopStartTick, tick);
+            long end = Math.min(Math.max(loopStartTick, tick), loadedMidi.schedule().getLengthTicks());
+            if (end > start) {
+                setLoop(LoopRegion.of(loadedMidi.schedule(), start, end), start);
             }
         }
     }
 
+    /**
+     * Sets or clears the loop and moves playback to a tick.
+     *
+     * @param region The loop to play, or {@code null} to play the whole sequence.
+     * @param tick   The tick to move to.
+     */
+    private void setLoop(LoopRegion region, long tick) {
+        clearLoopState();
+        if (region != null) {
+            loop = region;
+            loopButton.setText("Clear A-B");
+            animationManager.setLoop(region);
+        }
+        seek(tick);
+    }
+
+    private void clearLoopState() {
+        loop = null;
+        loopStartTick = -1;
+        loopButton.setText("Set A");
+        animationManager.setLoop(null);
+    }
+
     public void playMidi() {
+        if (loadTask != null) {
+            return;  // La progress bar mostra il caricamento in corso
+        }
         if (playbackState instanceof StoppedState || playbackState instanceof PausedState) {
             playbackState.play(this);
         }
@@ -237,15 +571,21 @@ public class PianoController implements Initializable {
 
     public void stopPlayback() {
         currentTick = 0;  // Resetta il tick corrente
-        progressBar.setProgress(0);  // Resetta la progress bar
+        playbackProgress.reset();  // Resetta la progress bar
         animationManager.stopAnimations();  // Ferma tutte le animazioni in corso
+        LOGGER.fine(() -> LatencyMetrics.getInstance().summary());
+        VoiceManager voices = noteDispatcher.getVoiceManager();
+        LOGGER.fine(() -> String.format("Voices stolen: %d (polyphony %d, %s)", voices.getStolenVoices(), voices.getPolyphony(), voices.getPolicy()));
+        if (animationManager.getRenderer() instanceof NodeNoteRenderer nodeRenderer) {
+            LOGGER.fine(nodeRenderer.getNotePool()::toString);
+        }
     }
 
     private void toggleRecording() {
         if (recordingManager.isRecording()) {
             recordingManager.stopRecording();
         } else {
-            recordingManager.startRecording();
+            recordingManager.startRecording(bpm);
         }
     }
 
@@ -254,8 +594,7 @@ public class PianoController implements Initializable {
             int newBpm = Integer.parseInt(bpmTextField.getText());
             if (newBpm >= 40 && newBpm <= 240) {
                 bpm = newBpm;
-                playbackSpeed = bpm / 120.0;
-                updateAnimationSpeeds();
+                updatePlaybackSpeed();
             } else {
                 uiManager.showError("BPM must be between 40 and 240.");
             }
@@ -264,8 +603,13 @@ public class PianoController implements Initializable {
         }
     }
 
-    private void updateAnimationSpeeds() {
-        animationManager.updateAnimationSpeeds(playbackSpeed);
+    /**
+     * Applies the user tempo as the rate of the master clock, relative to the tempo of the loaded sequence.
+     */
+    private void updatePlaybackSpeed() {
+        playbackSpeed = (double) bpm / sequenceBpm;
+        playbackClock.setRate(playbackSpeed);
+        noteDispatcher.wake();
     }
 
     public void changePlaybackState(PlaybackState playbackState) {
@@ -274,13 +618,23 @@ public class PianoController implements Initializable {
 
     public void resetPlayback() {
         currentTick = 0;
-        progressBar.setProgress(0);
+        playbackProgress.reset();
     }
 
+    /**
+     * Freezes playback at the current position. The clock, the notes on screen and the highlighted keys stay as they
+     * are, so resuming does not rebuild anything.
+     */
+    public void pausePlayback() {
+        currentTick = animationManager.getPositionTick();
+        animationManager.pauseAnimations();
+    }
+
+    /**
+     * Continues playback from the position at which it was paused.
+     */
     public void resumePlayback() {
-        long elapsedTime = System.currentTimeMillis() - pauseTime;
-        animationManager.resumeAnimations(elapsedTime);  // Riprendi le animazioni
-        midiManager.resumePlayback(elapsedTime);  // Riprendi la riproduzione MIDI
+        animationManager.resumeAnimations();  // Riprende dal punto esatto in cui il clock è stato fermato
     }
 
 
@@ -289,22 +643,28 @@ public class PianoController implements Initializable {
     }
 
     private void startNoteAnimations(long startTick) {
-        if (sequence == null) {
+        if (loadedMidi == null) {
             System.out.println("No MIDI sequence loaded.");
             return;
         }
 
-        int totalNotes = midiManager.countTotalNotes(sequence);
-        AtomicInteger notesPlayed = new AtomicInteger(0);
-        progressBar.setProgress(0);
+        playbackProgress.reset();
 
-        animationManager.startNoteAnimations(sequence, startTick, bpm, playbackSpeed, notesPlayed, totalNotes, reverseNoteMap);
+        animationManager.startNoteAnimations(loadedMidi.schedule(), startTick, reverseNoteMap);
     }
 
     private void closeResources() {
+        if (loadTask != null) {
+            loadTask.cancel();
+        }
         stopMidi();
+        noteDispatcher.close();
+        if (midiInputManager != null) {
+            midiInputManager.close();
+        }
         if (synthesizer != null && synthesizer.isOpen()) {
             synthesizer.close();
         }
+        LatencyMetrics.getInstance().dumpIfConfigured();
     }
 }
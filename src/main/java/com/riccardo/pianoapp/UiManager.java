@@ -22,4 +22,17 @@ public class UiManager {
         alert.setContentText(message);
         alert.showAndWait();
     }
+
+    /**
+     * Shows an information alert with the provided message.
+     *
+     * @param message The message to be displayed.
+     */
+    public void showInformation(String message) {
+        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+        alert.setTitle("Information");
+        alert.setHeaderText(null);
+        alert.setContentText(message);
+        alert.showAndWait();
+    }
 }
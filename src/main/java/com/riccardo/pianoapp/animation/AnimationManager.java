@@ -1,198 +1,421 @@
 package com.riccardo.pianoapp.animation;
 
-import javafx.animation.*;
-import javafx.application.Platform;
+import com.riccardo.pianoapp.metrics.LatencyHistogram;
+import com.riccardo.pianoapp.metrics.LatencyMetrics;
+import com.riccardo.pianoapp.midi.LoopRegion;
+import com.riccardo.pianoapp.midi.NoteSchedule;
+import com.riccardo.pianoapp.midi.PlaybackClock;
+import com.riccardo.pianoapp.sound.KeyHighlights;
+import com.riccardo.pianoapp.sound.NoteDispatcher;
+import javafx.animation.AnimationTimer;
 import javafx.scene.control.Button;
-import javafx.scene.control.ProgressBar;
 import javafx.scene.layout.Pane;
-import javafx.util.Duration;
-import javax.sound.midi.*;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
-
-import static com.riccardo.pianoapp.PianoController.channel;
 
 /**
  * Manages the animations of falling notes and the progress bar.
+ * <p>
+ * A single {@link AnimationTimer} drives every note on screen: on each pulse the positions of the visible notes are
+ * computed from the master {@link PlaybackClock}, so the work per frame depends on the notes on screen and not on the
+ * file size. Notes land on the keyboard when the clock reaches their time, which is when the {@link NoteDispatcher}
+ * plays them on its own thread; the keys it is playing are highlighted on the next pulse. Drawing is delegated to a
+ * {@link NoteRenderer} selected through {@link RenderMode}.
+ * <p>
+ * When a {@link LoopRegion} is set, its precomputed slice is played instead of the whole schedule and the notes of the
+ * next repetition fall while the current one ends. The clock keeps running across repetitions; positions are mapped
+ * back into the loop for the progress bar.
  */
 public class AnimationManager implements PlaybackObserver {
+    private static final double FALL_PIXELS_PER_MILLI = 1.0;
+
     private final Pane notePane;
-    private final ProgressBar progressBar;
-    private final Map<Button, String> originalStyleMap;
-    private double playbackSpeed;
+    private final PlaybackProgress progress;
+    private final KeyHighlights keyHighlights;
+    private final PlaybackClock clock;
+    private final NoteDispatcher dispatcher;
+    private final LatencyHistogram pulseDuration = LatencyMetrics.getInstance().getFxPulse();
+
+    private final AnimationTimer renderLoop = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            renderFrame(now);
+        }
+    };
+    private NoteRenderer renderer;
+    private RenderMode renderMode;
+
+    private NoteSchedule source;
+    private NoteSchedule schedule;
+    private LoopRegion loop;
+    private Map<Integer, Button> reverseNoteMap;
+    private double durationMicros;
+    private int nextNote;
+    private double spawnOffsetMicros;
+    private int[] visibleNotes = new int[256];
+    private double[] visibleOffsets = new double[256];
+    private int visibleCount;
+    private final boolean[] highlightedKeys = new boolean[128];
+    private boolean running;
+    private boolean paused;
 
     /**
      * Constructor for AnimationManager.
      *
      * @param notePane         The pane in which notes are animated.
-     * @param progressBar      The progress bar to indicate playback progress.
-     * @param originalStyleMap The map to keep track of the original key style for buttons.
+     * @param progress         The progress bar and time readout to indicate playback progress.
+     * @param keyHighlights    The highlights of the keyboard keys, shared with the other sources of notes.
+     * @param clock            The master playback clock.
+     * @param dispatcher       The dispatcher that plays the notes.
      */
-    public AnimationManager(Pane notePane, ProgressBar progressBar, Map<Button, String> originalStyleMap) {
+    public AnimationManager(Pane notePane, PlaybackProgress progress, KeyHighlights keyHighlights, PlaybackClock clock, NoteDispatcher dispatcher) {
         this.notePane = notePane;
-        this.progressBar = progressBar;
-        this.originalStyleMap = originalStyleMap;
-        this.playbackSpeed = 1.0;  // Default playback speed
+        this.progress = progress;
+        this.keyHighlights = keyHighlights;
+        this.clock = clock;
+        this.dispatcher = dispatcher;
+        setRenderMode(RenderMode.NODES);
     }
 
     /**
-     * Starts the note animations based on the provided MIDI sequence.
+     * Starts the note animations and the playback of the compiled note schedule. The clock is started so that the
+     * first notes fall from the top of the pane. If a loop of this schedule is set, it is played from the start tick,
+     * or from its start if the tick is outside the loop.
      *
-     * @param sequence       The MIDI sequence to be played.
+     * @param schedule       The compiled note schedule of the MIDI sequence to be played.
      * @param startTick      The tick to start playback from.
-     * @param bpm            The playback speed in beats per minute.
-     * @param playbackSpeed  The playback speed changer.
-     * @param notesPlayed    The atomic integer tracking notes played.
-     * @param totalNotes     The total number of notes in the MIDI sequence.
      * @param reverseNoteMap The map of note values to buttons.
      */
-    public void startNoteAnimations(Sequence sequence, long startTick, int bpm, double playbackSpeed, AtomicInteger notesPlayed, int totalNotes, Map<Integer, Button> reverseNoteMap) {
-        long startTime = System.currentTimeMillis();
-
-        for (Track track : sequence.getTracks()) {
-            for (int i = 0; i < track.size(); i++) {
-                MidiEvent event = track.get(i);
-                if (event.getMessage() instanceof ShortMessage sm) {
-                    int note = sm.getData1();
-                    boolean noteOn = sm.getCommand() == ShortMessage.NOTE_ON && sm.getData2() > 0;
-                    if (event.getTick() >= startTick) {
-                        long eventTimestamp = (long) (startTime + ((event.getTick() - startTick) * (1000.0 / (sequence.getResolution() * (bpm / 60.0)))));
-
-                        if (noteOn) {
-                            Button keyButton = reverseNoteMap.get(note);
-                            if (keyButton != null) {
-                                long noteDuration = getNoteDuration(track, i);
-                                Platform.runLater(() -> scheduleFallingNoteAnimation(note, eventTimestamp, keyButton, noteDuration, totalNotes, notesPlayed, playbackSpeed, notePane, channel));
-                            }
-                        }
-                    }
-                }
+    public void startNoteAnimations(NoteSchedule schedule, long startTick, Map<Integer, Button> reverseNoteMap) {
+        stopAnimations();
+        if (loop != null && loop.source() != schedule) {
+            loop = null;
+        }
+        this.source = schedule;
+        this.schedule = playedSchedule();
+        this.durationMicros = schedule.getLengthMicros();
+        this.reverseNoteMap = reverseNoteMap;
+        startTick = clampToLoop(startTick);
+        showHeldNotes(startTick);
+        this.running = true;
+        dispatcher.start(this.schedule, startTick, schedule.getTempoMap().tickToMicros(startTick) - leadMillis() * 1000.0, loopMicros());
+        clock.resume();
+        renderLoop.start();
+    }
+
+    /**
+     * Moves playback to a tick, keeping it running or paused. The notes still held at that time are played again, and
+     * the note view is rebuilt from the notes around the new position only, so the cost of a seek does not depend on
+     * the length of the sequence.
+     *
+     * @param tick The tick to move to.
+     */
+    public void seek(long tick) {
+        if (schedule == null) {
+            return;
+        }
+        schedule = playedSchedule();
+        tick = clampToLoop(tick);
+        renderer.clear();
+        clearKeyHighlights();
+        showHeldNotes(tick);
+        dispatcher.start(schedule, tick, schedule.getTempoMap().tickToMicros(tick), loopMicros());
+        if (paused) {
+            renderFrame(System.nanoTime());
+        } else if (!running) {
+            running = true;
+            renderLoop.start();
+        }
+    }
+
+    /**
+     * Sets the loop played from the next start or seek, or clears it. The loop is played only if it was sliced from
+     * the schedule being played.
+     *
+     * @param loop The loop to play, or {@code null} to play the whole schedule.
+     */
+    public void setLoop(LoopRegion loop) {
+        this.loop = loop;
+    }
+
+    public LoopRegion getLoop() {
+        return loop;
+    }
+
+    private NoteSchedule playedSchedule() {
+        return loop != null && loop.source() == source ? loop.schedule() : source;
+    }
+
+    private boolean isLooping() {
+        return schedule != null && loop != null && schedule == loop.schedule();
+    }
+
+    private double loopMicros() {
+        return isLooping() ? loop.lengthMicros() : 0;
+    }
+
+    private long clampToLoop(long tick) {
+        return isLooping() && !loop.contains(tick) ? loop.startTick() : tick;
+    }
+
+    /**
+     * Maps a position of the clock to the position in the sequence, which differ once a loop has wrapped.
+     */
+    private double sequenceMicros(double positionMicros) {
+        return isLooping() ? loop.wrap(positionMicros) : positionMicros;
+    }
+
+    /**
+     * Rebuilds the note view for a start position: the notes held at that tick are shown as being consumed, and the
+     * notes from that tick on are spawned as they come into view.
+     */
+    private void showHeldNotes(long tick) {
+        visibleCount = 0;
+        for (int index : schedule.getHeldNotes(tick)) {
+            if (reverseNoteMap.containsKey(schedule.getKey(index))) {
+                addVisibleNote(index, 0);
             }
         }
+        nextNote = schedule.firstIndexAtOrAfter(tick);
+        spawnOffsetMicros = 0;
+    }
+
+    private void addVisibleNote(int index, double offsetMicros) {
+        if (visibleCount == visibleNotes.length) {
+            visibleNotes = Arrays.copyOf(visibleNotes, visibleCount * 2);
+            visibleOffsets = Arrays.copyOf(visibleOffsets, visibleCount * 2);
+        }
+        visibleNotes[visibleCount] = index;
+        visibleOffsets[visibleCount] = offsetMicros;
+        visibleCount++;
+    }
+
+    /**
+     * Returns the playback position as a tick, e.g. to keep it when pausing.
+     *
+     * @return The tick at the current clock position, within the loop if one is played, or 0 during the lead-in or
+     * when nothing is played.
+     */
+    public long getPositionTick() {
+        if (schedule == null) {
+            return 0;
+        }
+        return schedule.getTempoMap().microsToTick(Math.max(0.0, sequenceMicros(clock.getPositionMicros())));
     }
 
-    private long getNoteDuration(Track track, int noteIndex) {
-        for (int i = noteIndex + 1; i < track.size(); i++) {
-            MidiEvent nextEvent = track.get(i);
-            if (nextEvent.getMessage() instanceof ShortMessage sm) {
-                if (sm.getCommand() == ShortMessage.NOTE_OFF || (sm.getCommand() == ShortMessage.NOTE_ON && sm.getData2() == 0)) {
-                    return nextEvent.getTick() - track.get(noteIndex).getTick();
+    /**
+     * Returns whether a sequence is being played or paused.
+     *
+     * @return {@code true} from the start of the animations until they are stopped.
+     */
+    public boolean isActive() {
+        return schedule != null;
+    }
+
+    /**
+     * Renders one frame: spawns the notes that became visible, draws the falling and consumed notes, and highlights
+     * the keys being played.
+     *
+     * @param now The pulse timestamp in nanoseconds.
+     */
+    private void renderFrame(long now) {
+        long frameStart = System.nanoTime();
+        double playbackMillis = clock.getPositionMicros(now) / 1000.0;
+        double leadMillis = leadMillis();
+
+        spawnNotes(playbackMillis + leadMillis);
+        drawNotes(playbackMillis, leadMillis);
+        updateKeyHighlights();
+        updateProgress(playbackMillis);
+
+        if (!isLooping() && nextNote >= schedule.size() && visibleCount == 0 && !dispatcher.isPlaying()) {
+            renderLoop.stop();
+            running = false;
+            progress.complete();
+        }
+        pulseDuration.record(System.nanoTime() - frameStart);
+    }
+
+    /**
+     * The time a note takes to fall from the top of the pane to the keyboard.
+     */
+    private double leadMillis() {
+        return notePane.getHeight() / FALL_PIXELS_PER_MILLI;
+    }
+
+    /**
+     * Spawns the notes that come into view before the horizon. In a loop, the notes of the next repetition are spawned
+     * after the last ones of the current repetition, shifted by the length of the loop.
+     */
+    private void spawnNotes(double horizonMillis) {
+        while (true) {
+            if (nextNote >= schedule.size()) {
+                if (!isLooping() || schedule.isEmpty()) {
+                    return;
                 }
+                nextNote = 0;
+                spawnOffsetMicros += loop.lengthMicros();
             }
+            if (noteStartMillis(nextNote) + spawnOffsetMicros / 1000.0 > horizonMillis) {
+                return;
+            }
+            if (reverseNoteMap.containsKey(schedule.getKey(nextNote))) {
+                addVisibleNote(nextNote, spawnOffsetMicros);
+            }
+            nextNote++;
         }
-        return 0;
     }
 
     /**
-     * Schedules the animation of a falling musical note and handles the note consumption when the animation finishes.
-     *
-     * @param note              The MIDI note value of the falling note.
-     * @param eventTimestamp    The timestamp at which the note event occurs.
-     * @param keyButton         The button representing the key associated with the note.
-     * @param noteDuration      The duration of the note in milliseconds.
-     * @param totalNotes        The total number of notes to be played.
-     * @param notesPlayed       The atomic integer tracking the number of notes played.
-     * @param playbackSpeed     The speed at which the note should fall.
-     * @param notePane          The pane in which the falling note animation appears.
-     * @param channel           The MIDI channel used for playback.
-     */
-    private void scheduleFallingNoteAnimation(int note, long eventTimestamp, Button keyButton, long noteDuration, int totalNotes, AtomicInteger notesPlayed, double playbackSpeed, Pane notePane, MidiChannel channel) {
-        if (keyButton == null) return;
-
-        double x = keyButton.getLayoutX();
-        double noteHeight = 20 + (noteDuration / 10.0);
+     * Draws every visible note. A note appears {@code leadMillis} before its time, lands on the keyboard at its time,
+     * and then shrinks for its duration.
+     */
+    private void drawNotes(double playbackMillis, double leadMillis) {
         double paneHeight = notePane.getHeight();
-        double startY = -noteHeight;
-
-        FallingNote fallingNote = new FallingNote(note, eventTimestamp, x, startY, keyButton.getWidth(), noteHeight);
-        notePane.getChildren().add(fallingNote);
-
-        double distance = paneHeight - noteHeight;
-        double animationDurationMillis = distance / playbackSpeed;
-
-        long delay = Math.max(0, eventTimestamp - System.currentTimeMillis());
-
-        Timeline timeline = new Timeline(
-                new KeyFrame(Duration.ZERO, new KeyValue(fallingNote.layoutYProperty(), startY)),
-                new KeyFrame(Duration.millis(animationDurationMillis), new KeyValue(fallingNote.layoutYProperty(), paneHeight - noteHeight, Interpolator.LINEAR))
-        );
-        timeline.setDelay(Duration.millis(delay));
-        timeline.setOnFinished(event -> {
-            notePane.getChildren().remove(fallingNote);
-            NoteConsumer noteConsumer = new NoteConsumer(keyButton, note, noteDuration, x, paneHeight - noteHeight, keyButton.getWidth(), noteHeight, originalStyleMap, notePane);
-            notePane.getChildren().add(noteConsumer);
-            noteConsumer.startConsumption(notePane);
-            noteConsumer.playNote();
-
-            int played = notesPlayed.incrementAndGet();
-            Platform.runLater(() -> {
-                progressBar.setProgress((double) played / totalNotes);
-                if (played == totalNotes) {
-                    progressBar.setProgress(1.0);
+        renderer.beginFrame();
+        for (int i = visibleCount - 1; i >= 0; i--) {
+            int index = visibleNotes[i];
+            Button keyButton = reverseNoteMap.get(schedule.getKey(index));
+            double duration = noteDurationMillis(index);
+            double noteHeight = 20 + (duration / 10.0);
+            double sinceLanding = playbackMillis - noteStartMillis(index) - visibleOffsets[i] / 1000.0;
+
+            if (sinceLanding < 0) {
+                double y = -noteHeight + (leadMillis + sinceLanding) * FALL_PIXELS_PER_MILLI;
+                renderer.drawFallingNote(keyButton.getLayoutX(), y, keyButton.getWidth(), noteHeight);
+                continue;
+            }
+            double consumed = duration <= 0 ? 1.0 : sinceLanding / duration;
+            if (consumed >= 1.0) {
+                visibleCount--;
+                visibleNotes[i] = visibleNotes[visibleCount];
+                visibleOffsets[i] = visibleOffsets[visibleCount];
+            } else {
+                double landingY = paneHeight - noteHeight;
+                renderer.drawConsumingNote(keyButton.getLayoutX(), landingY + noteHeight * consumed, keyButton.getWidth(), noteHeight * (1.0 - consumed));
+            }
+        }
+        renderer.endFrame();
+    }
+
+    /**
+     * Highlights the keys the dispatcher is playing and removes the highlights of the keys it released since the
+     * previous frame. Keys also held on an input device stay highlighted.
+     */
+    private void updateKeyHighlights() {
+        for (int key = 0; key < highlightedKeys.length; key++) {
+            boolean sounding = dispatcher.isKeySounding(key);
+            if (sounding != highlightedKeys[key]) {
+                highlightedKeys[key] = sounding;
+                if (sounding) {
+                    keyHighlights.add(key);
+                } else {
+                    keyHighlights.remove(key);
                 }
-            });
-        });
-        timeline.play();
-        fallingNote.setAnimation(timeline);
+            }
+        }
+    }
+
+    private void clearKeyHighlights() {
+        for (int key = 0; key < highlightedKeys.length; key++) {
+            if (highlightedKeys[key]) {
+                highlightedKeys[key] = false;
+                keyHighlights.remove(key);
+            }
+        }
+    }
+
+    private void updateProgress(double playbackMillis) {
+        progress.update(sequenceMicros(playbackMillis * 1000.0), durationMicros);
+    }
+
+    private double noteStartMillis(int index) {
+        return schedule.getStartMicros(index) / 1000.0;
+    }
+
+    private double noteDurationMillis(int index) {
+        return (schedule.getEndMicros(index) - schedule.getStartMicros(index)) / 1000.0;
     }
 
     /**
-     * Updates the animation speeds for all falling notes.
+     * Selects the renderer used to draw the notes. The switch takes effect on the next frame.
      *
-     * @param playbackSpeed     The new playback speed multiplier.
+     * @param renderMode The renderer to use.
      */
-    public void updateAnimationSpeeds(double playbackSpeed) {
-        this.playbackSpeed = playbackSpeed;
-        notePane.getChildren().forEach(node -> {
-            if (node instanceof FallingNote) {
-                ((FallingNote) node).updateSpeed(playbackSpeed);
-            }
-        });
+    public void setRenderMode(RenderMode renderMode) {
+        if (renderMode == this.renderMode) {
+            return;
+        }
+        if (renderer != null) {
+            renderer.dispose();
+        }
+        this.renderMode = renderMode;
+        this.renderer = switch (renderMode) {
+            case NODES -> new NodeNoteRenderer(notePane, NotePool.DEFAULT_MAX_LIVE_NODES);
+            case CANVAS -> new CanvasNoteRenderer(notePane);
+        };
+    }
+
+    public RenderMode getRenderMode() {
+        return renderMode;
+    }
+
+    public NoteRenderer getRenderer() {
+        return renderer;
     }
 
     /**
-     * Pauses all animations.
+     * Pauses all animations and freezes the master clock. The notes on screen and the highlighted keys stay in place
+     * and the sounding notes are silenced until playback resumes. A sequence whose notes have all been played is
+     * paused too, so a seek made while paused does not start it again.
      */
     public void pauseAnimations() {
-        notePane.getChildren().forEach(node -> {
-            if (node instanceof FallingNote) {
-                ((FallingNote) node).pauseAnimation();
-            }
-        });
+        if (schedule == null || paused) {
+            return;
+        }
+        dispatcher.pause();
+        renderLoop.stop();
+        running = false;
+        paused = true;
     }
 
     /**
-     * Resumes all animations.
-     *
-     * @param elapsedTime   The time elapsed since the animations were paused.
+     * Resumes all animations and the notes from the position they had when paused.
      */
-    public void resumeAnimations(long elapsedTime) {
-        notePane.getChildren().forEach(node -> {
-            if (node instanceof FallingNote) {
-                ((FallingNote) node).adjustStartTime(elapsedTime);
-                ((FallingNote) node).resumeAnimation();
-            }
-        });
+    public void resumeAnimations() {
+        if (!paused) {
+            return;
+        }
+        paused = false;
+        dispatcher.resume();
+        running = true;
+        renderLoop.start();
     }
 
+
     /**
-     * Stops all animations and clears the note pane.
+     * Stops all animations and the playback of the notes, and clears the note view.
      */
     public void stopAnimations() {
-        notePane.getChildren().forEach(node -> {
-            if (node instanceof FallingNote) {
-                ((FallingNote) node).stopAnimation();
-            }
-        });
-        notePane.getChildren().clear();
+        renderLoop.stop();
+        running = false;
+        paused = false;
+        clock.pause();
+        dispatcher.stop();
+        if (schedule != null) {
+            clearKeyHighlights();
+        }
+        visibleCount = 0;
+        renderer.clear();
+        schedule = null;
     }
 
     /**
-     * Updates playback speed based on playback settings or user preferences.
+     * Does nothing: a start needs the schedule and goes through {@link #startNoteAnimations}, and a resume after a
+     * pause goes through {@link #resumeAnimations}, which continues from the paused clock without rebuilding anything.
      */
     @Override
     public void onPlaybackStarted() {
-        // Handle playback start event if necessary.
     }
 
     @Override
@@ -0,0 +1,104 @@
+package com.riccardo.pianoapp.animation;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import java.util.Arrays;
+
+/**
+ * Renders every visible note onto a single {@link Canvas}.
+ * <p>
+ * Notes are buffered while the frame is computed and drawn in one batched pass per colour at the end of the frame,
+ * so the scene graph holds one node whatever the note density.
+ */
+public class CanvasNoteRenderer implements NoteRenderer {
+    private static final double ARC = 10;
+
+    private final Pane notePane;
+    private final Canvas canvas = new Canvas();
+    private final GraphicsContext graphics;
+    private double[] fallingNotes = new double[4 * 256];
+    private double[] consumingNotes = new double[4 * 256];
+    private int fallingCount;
+    private int consumingCount;
+    private boolean dirty;
+
+    /**
+     * Constructor for CanvasNoteRenderer.
+     *
+     * @param notePane The pane in which notes are shown.
+     */
+    public CanvasNoteRenderer(Pane notePane) {
+        this.notePane = notePane;
+        this.graphics = canvas.getGraphicsContext2D();
+        canvas.setManaged(false);
+        canvas.widthProperty().bind(notePane.widthProperty());
+        canvas.heightProperty().bind(notePane.heightProperty());
+        notePane.getChildren().add(canvas);
+    }
+
+    @Override
+    public void beginFrame() {
+        fallingCount = 0;
+        consumingCount = 0;
+    }
+
+    @Override
+    public void drawFallingNote(double x, double y, double width, double height) {
+        fallingNotes = append(fallingNotes, fallingCount++, x, y, width, height);
+    }
+
+    @Override
+    public void drawConsumingNote(double x, double y, double width, double height) {
+        consumingNotes = append(consumingNotes, consumingCount++, x, y, width, height);
+    }
+
+    private static double[] append(double[] buffer, int index, double x, double y, double width, double height) {
+        int offset = index * 4;
+        if (offset + 4 > buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[offset] = x;
+        buffer[offset + 1] = y;
+        buffer[offset + 2] = width;
+        buffer[offset + 3] = height;
+        return buffer;
+    }
+
+    @Override
+    public void endFrame() {
+        if (!dirty && fallingCount == 0 && consumingCount == 0) {
+            return;
+        }
+        graphics.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        graphics.setStroke(Color.BLACK);
+        graphics.setLineWidth(1);
+        drawBatch(fallingNotes, fallingCount, NoteShape.FALLING_FILL);
+        drawBatch(consumingNotes, consumingCount, NoteShape.CONSUMING_FILL);
+        dirty = fallingCount > 0 || consumingCount > 0;
+    }
+
+    private void drawBatch(double[] buffer, int count, Color fill) {
+        graphics.setFill(fill);
+        for (int i = 0, offset = 0; i < count; i++, offset += 4) {
+            graphics.fillRoundRect(buffer[offset], buffer[offset + 1], buffer[offset + 2], buffer[offset + 3], ARC, ARC);
+            graphics.strokeRoundRect(buffer[offset], buffer[offset + 1], buffer[offset + 2], buffer[offset + 3], ARC, ARC);
+        }
+    }
+
+    @Override
+    public void clear() {
+        beginFrame();
+        graphics.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        dirty = false;
+    }
+
+    @Override
+    public void dispose() {
+        clear();
+        canvas.widthProperty().unbind();
+        canvas.heightProperty().unbind();
+        notePane.getChildren().remove(canvas);
+    }
+}
@@ -0,0 +1,99 @@
+package com.riccardo.pianoapp.animation;
+
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Renders each visible note as a pooled shape in the note pane.
+ * <p>
+ * Shapes used in the previous frame are reused in draw order; only the difference in the number of visible notes
+ * goes through the {@link NotePool}, whose counters are published over JMX while the renderer is in use.
+ */
+public class NodeNoteRenderer implements NoteRenderer {
+    private final NotePool notePool;
+    private final List<NoteShape> fallingNotes = new ArrayList<>();
+    private final List<NoteShape> consumingNotes = new ArrayList<>();
+    private int fallingCount;
+    private int consumingCount;
+
+    /**
+     * Constructor for NodeNoteRenderer.
+     *
+     * @param notePane     The pane in which notes are shown.
+     * @param maxLiveNodes The maximum number of shapes visible at the same time.
+     */
+    public NodeNoteRenderer(Pane notePane, int maxLiveNodes) {
+        this.notePool = new NotePool(notePane, maxLiveNodes);
+        notePool.registerMBean();
+    }
+
+    @Override
+    public void beginFrame() {
+        fallingCount = 0;
+        consumingCount = 0;
+    }
+
+    @Override
+    public void drawFallingNote(double x, double y, double width, double height) {
+        if (draw(fallingNotes, fallingCount, NoteShape.FALLING_FILL, x, y, width, height)) {
+            fallingCount++;
+        }
+    }
+
+    @Override
+    public void drawConsumingNote(double x, double y, double width, double height) {
+        if (draw(consumingNotes, consumingCount, NoteShape.CONSUMING_FILL, x, y, width, height)) {
+            consumingCount++;
+        }
+    }
+
+    /**
+     * Places the next shape of a kind, taking a new one from the pool when all the shapes of the previous frame are
+     * used.
+     *
+     * @return {@code false} if the live node cap has been reached and the note is not shown.
+     */
+    private boolean draw(List<NoteShape> shapes, int count, Color fill, double x, double y, double width, double height) {
+        NoteShape noteShape;
+        if (count < shapes.size()) {
+            noteShape = shapes.get(count);
+        } else {
+            noteShape = notePool.acquire(fill);
+            if (noteShape == null) {
+                return false;
+            }
+            shapes.add(noteShape);
+        }
+        noteShape.place(x, y, width, height);
+        return true;
+    }
+
+    @Override
+    public void endFrame() {
+        while (fallingNotes.size() > fallingCount) {
+            notePool.release(fallingNotes.remove(fallingNotes.size() - 1));
+        }
+        while (consumingNotes.size() > consumingCount) {
+            notePool.release(consumingNotes.remove(consumingNotes.size() - 1));
+        }
+    }
+
+    @Override
+    public void clear() {
+        beginFrame();
+        endFrame();
+    }
+
+    @Override
+    public void dispose() {
+        clear();
+        notePool.detachAll();
+        notePool.unregisterMBean();
+    }
+
+    public NotePool getNotePool() {
+        return notePool;
+    }
+}
@@ -0,0 +1,172 @@
+package com.riccardo.pianoapp.animation;
+
+import javafx.scene.Node;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+
+/**
+ * Recycles the note shapes shown in the note pane.
+ * <p>
+ * Pooled shapes stay attached to the pane and are only hidden when released, so the scene graph does not change
+ * while notes come and go. The number of visible shapes is capped; requests above the cap are rejected. The counters
+ * are updated on the JavaFX thread and can be read from any thread, e.g. over JMX as {@value #OBJECT_NAME}.
+ */
+public class NotePool implements NotePoolMXBean {
+    public static final int DEFAULT_MAX_LIVE_NODES = 512;
+    public static final String OBJECT_NAME = "com.riccardo.pianoapp:type=NotePool";
+
+    private static NotePool registered;
+
+    private final Pane notePane;
+    private final int maxLiveNodes;
+    private final ArrayDeque<NoteShape> freeShapes = new ArrayDeque<>();
+    private volatile int liveNodes;
+    private volatile int peakLiveNodes;
+    private volatile long hits;
+    private volatile long misses;
+    private volatile long rejected;
+
+    /**
+     * Constructor for NotePool.
+     *
+     * @param notePane     The pane in which the pooled shapes are shown.
+     * @param maxLiveNodes The maximum number of shapes visible at the same time.
+     */
+    public NotePool(Pane notePane, int maxLiveNodes) {
+        if (maxLiveNodes <= 0) {
+            throw new IllegalArgumentException("maxLiveNodes must be positive: " + maxLiveNodes);
+        }
+        this.notePane = notePane;
+        this.maxLiveNodes = maxLiveNodes;
+    }
+
+    /**
+     * Takes a note shape from the pool.
+     *
+     * @param fill The fill of the note, e.g. {@link NoteShape#FALLING_FILL}.
+     * @return A visible shape, or {@code null} if the live node cap has been reached.
+     */
+    public NoteShape acquire(Color fill) {
+        if (!reserve()) {
+            return null;
+        }
+        NoteShape noteShape = freeShapes.poll();
+        if (noteShape == null) {
+            noteShape = new NoteShape();
+            attach(noteShape);
+        } else {
+            hits++;
+        }
+        noteShape.setFill(fill);
+        noteShape.setVisible(true);
+        return noteShape;
+    }
+
+    public void release(NoteShape noteShape) {
+        noteShape.setVisible(false);
+        freeShapes.push(noteShape);
+        liveNodes--;
+    }
+
+    /**
+     * Removes the pooled shapes from the note pane. Shapes still in use must be released first.
+     */
+    public void detachAll() {
+        notePane.getChildren().removeAll(freeShapes);
+        freeShapes.clear();
+    }
+
+    /**
+     * Publishes the counters with the platform MBean server, replacing the pool registered before, e.g. by a previous
+     * renderer.
+     */
+    public void registerMBean() {
+        synchronized (NotePool.class) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(OBJECT_NAME);
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(this, name);
+                registered = this;
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Removes the counters from the platform MBean server, unless another pool has been registered since.
+     */
+    public void unregisterMBean() {
+        synchronized (NotePool.class) {
+            if (registered != this) {
+                return;
+            }
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+            registered = null;
+        }
+    }
+
+    private boolean reserve() {
+        if (liveNodes >= maxLiveNodes) {
+            rejected++;
+            return false;
+        }
+        liveNodes++;
+        peakLiveNodes = Math.max(peakLiveNodes, liveNodes);
+        return true;
+    }
+
+    private void attach(Node node) {
+        misses++;
+        node.setManaged(false);
+        notePane.getChildren().add(node);
+    }
+
+    @Override
+    public int getMaxLiveNodes() {
+        return maxLiveNodes;
+    }
+
+    @Override
+    public int getLiveNodes() {
+        return liveNodes;
+    }
+
+    @Override
+    public int getPeakLiveNodes() {
+        return peakLiveNodes;
+    }
+
+    @Override
+    public long getHits() {
+        return hits;
+    }
+
+    @Override
+    public long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public long getRejected() {
+        return rejected;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("NotePool[live=%d, peak=%d, max=%d, hits=%d, misses=%d, rejected=%d]",
+                liveNodes, peakLiveNodes, maxLiveNodes, hits, misses, rejected);
+    }
+}
@@ -0,0 +1,19 @@
+package com.riccardo.pianoapp.animation;
+
+/**
+ * Management interface of a {@link NotePool}. Hits are shapes reused from the pool, misses are shapes created and
+ * attached to the note pane, and rejected requests are notes not shown because the live node cap was reached.
+ */
+public interface NotePoolMXBean {
+    int getMaxLiveNodes();
+
+    int getLiveNodes();
+
+    int getPeakLiveNodes();
+
+    long getHits();
+
+    long getMisses();
+
+    long getRejected();
+}
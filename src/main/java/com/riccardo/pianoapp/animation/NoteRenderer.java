@@ -0,0 +1,24 @@
+package com.riccardo.pianoapp.animation;
+
+/**
+ * Draws the notes of one frame of the falling-note view.
+ * <p>
+ * The render loop of {@link AnimationManager} computes the geometry of every visible note and hands it to the
+ * renderer between {@link #beginFrame()} and {@link #endFrame()}.
+ */
+public interface NoteRenderer {
+    void beginFrame();
+    void drawFallingNote(double x, double y, double width, double height);
+    void drawConsumingNote(double x, double y, double width, double height);
+    void endFrame();
+
+    /**
+     * Removes every note from the view.
+     */
+    void clear();
+
+    /**
+     * Removes the renderer from the note pane.
+     */
+    void dispose();
+}
@@ -0,0 +1,42 @@
+package com.riccardo.pianoapp.animation;
+
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+
+/**
+ * Represents a note in the note pane, either falling towards the keyboard or being consumed by it.
+ * <p>
+ * The note has no animation of its own: the render loop of {@link AnimationManager} places it on every frame, and
+ * the two kinds of note differ only in their fill. Instances are recycled through a {@link NotePool}.
+ */
+public class NoteShape extends Rectangle {
+    public static final Color FALLING_FILL = Color.BLUEVIOLET;
+    public static final Color CONSUMING_FILL = Color.LIGHTBLUE;
+
+    /**
+     * Constructor for NoteShape.
+     */
+    public NoteShape() {
+        this.setFill(FALLING_FILL);
+        this.setStroke(Color.BLACK);
+        this.setStrokeWidth(1);
+
+        this.setArcWidth(10);
+        this.setArcHeight(10);
+    }
+
+    /**
+     * Moves the note to the given position.
+     *
+     * @param x      The x-coordinate of the note.
+     * @param y      The y-coordinate of the note.
+     * @param width  The width of the note.
+     * @param height The height of the note.
+     */
+    public void place(double x, double y, double width, double height) {
+        setX(x);
+        setY(y);
+        setWidth(width);
+        setHeight(height);
+    }
+}
@@ -0,0 +1,77 @@
+package com.riccardo.pianoapp.animation;
+
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+
+/**
+ * Shows the playback position in the progress bar and as an elapsed/remaining time readout.
+ * <p>
+ * Updates are applied by the render loop at most once per frame, and only when the visible value changes: the bar is
+ * quantised to {@link #PROGRESS_STEPS} steps and the readout to whole seconds.
+ */
+public class PlaybackProgress {
+    private static final int PROGRESS_STEPS = 2000;
+
+    private final ProgressBar progressBar;
+    private final Label timeLabel;
+    private int shownStep = -1;
+    private long shownElapsedSeconds = -1;
+    private long shownRemainingSeconds = -1;
+
+    /**
+     * Constructor for PlaybackProgress.
+     *
+     * @param progressBar The progress bar to indicate playback progress.
+     * @param timeLabel   The label showing the elapsed and remaining time.
+     */
+    public PlaybackProgress(ProgressBar progressBar, Label timeLabel) {
+        this.progressBar = progressBar;
+        this.timeLabel = timeLabel;
+    }
+
+    /**
+     * Shows a playback position.
+     *
+     * @param positionMicros The position in microseconds from the start of the sequence, as given by the tempo map.
+     * @param durationMicros The duration of the sequence in microseconds.
+     */
+    public void update(double positionMicros, double durationMicros) {
+        double position = Math.max(0.0, Math.min(durationMicros, positionMicros));
+        int step = durationMicros > 0 ? (int) (position / durationMicros * PROGRESS_STEPS) : 0;
+        if (step != shownStep) {
+            shownStep = step;
+            progressBar.setProgress((double) step / PROGRESS_STEPS);
+        }
+
+        long elapsedSeconds = (long) (position / 1_000_000.0);
+        long remainingSeconds = (long) Math.ceil((durationMicros - position) / 1_000_000.0);
+        if (elapsedSeconds != shownElapsedSeconds || remainingSeconds != shownRemainingSeconds) {
+            shownElapsedSeconds = elapsedSeconds;
+            shownRemainingSeconds = remainingSeconds;
+            timeLabel.setText(formatTime(elapsedSeconds) + " / -" + formatTime(remainingSeconds));
+        }
+    }
+
+    /**
+     * Shows the end of playback.
+     */
+    public void complete() {
+        shownStep = PROGRESS_STEPS;
+        progressBar.setProgress(1.0);
+    }
+
+    /**
+     * Clears the progress bar and the time readout.
+     */
+    public void reset() {
+        shownStep = 0;
+        shownElapsedSeconds = -1;
+        shownRemainingSeconds = -1;
+        progressBar.setProgress(0);
+        timeLabel.setText("");
+    }
+
+    private static String formatTime(long seconds) {
+        return String.format("%02d:%02d", seconds / 60, seconds % 60);
+    }
+}
@@ -0,0 +1,26 @@
+package com.riccardo.pianoapp.animation;
+
+/**
+ * The available falling-note renderers.
+ */
+public enum RenderMode {
+    /**
+     * One pooled {@link NoteShape} per visible note.
+     */
+    NODES("Nodes"),
+    /**
+     * Every visible note drawn onto a single canvas, suited to very dense files.
+     */
+    CANVAS("Canvas");
+
+    private final String displayName;
+
+    RenderMode(String displayName) {
+        this.displayName = displayName;
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
@@ -0,0 +1,158 @@
+package com.riccardo.pianoapp.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds.
+ * <p>
+ * Buckets are log-linear: each power of two is split into {@value #SUB_BUCKETS} equal buckets, so a percentile is
+ * reported within about 3% of the recorded value from nanoseconds up to about 18 minutes, with a fixed amount of
+ * memory. Recording is a few atomic increments and never allocates, so it can be done on latency-sensitive threads.
+ */
+public class LatencyHistogram implements LatencyHistogramMXBean {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 40;
+    private static final long MAX_VALUE = (1L << MAX_MAGNITUDE) - 1;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray((MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Constructor for LatencyHistogram.
+     *
+     * @param name The name of the histogram, used in reports and as the MBean name.
+     */
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records a latency. Negative values are recorded as zero.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    private static long bucketLowerBound(int index) {
+        int group = index / SUB_BUCKETS;
+        int subBucket = index % SUB_BUCKETS;
+        return group == 0 ? subBucket : (long) (SUB_BUCKETS + subBucket) << (group - 1);
+    }
+
+    private static long bucketUpperBound(int index) {
+        int group = index / SUB_BUCKETS;
+        return bucketLowerBound(index) + (group == 0 ? 0 : (1L << (group - 1)) - 1);
+    }
+
+    /**
+     * Returns the value below which the given fraction of the recorded latencies fall.
+     *
+     * @param quantile The fraction, between 0 and 1, e.g. 0.99 for the 99th percentile.
+     * @return The latency in nanoseconds, or 0 if nothing has been recorded.
+     */
+    public long getValueAtQuantile(double quantile) {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getMeanNanos() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    @Override
+    public long getP50Nanos() {
+        return getValueAtQuantile(0.5);
+    }
+
+    @Override
+    public long getP99Nanos() {
+        return getValueAtQuantile(0.99);
+    }
+
+    @Override
+    public long getP999Nanos() {
+        return getValueAtQuantile(0.999);
+    }
+
+    @Override
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    /**
+     * Appends the non-empty buckets as CSV lines {@code name,lowerNanos,upperNanos,count}.
+     *
+     * @param out The builder to append to.
+     */
+    public void appendBuckets(StringBuilder out) {
+        for (int i = 0; i < counts.length(); i++) {
+            long bucketCount = counts.get(i);
+            if (bucketCount > 0) {
+                out.append(name).append(',').append(bucketLowerBound(i)).append(',').append(bucketUpperBound(i))
+                        .append(',').append(bucketCount).append('\n');
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: n=%d, p50=%.1f us, p99=%.1f us, p999=%.1f us, max=%.1f us",
+                name, getCount(), getP50Nanos() / 1000.0, getP99Nanos() / 1000.0, getP999Nanos() / 1000.0, getMaxNanos() / 1000.0);
+    }
+}
@@ -0,0 +1,22 @@
+package com.riccardo.pianoapp.metrics;
+
+/**
+ * Management interface of a {@link LatencyHistogram}. All values are in nanoseconds.
+ */
+public interface LatencyHistogramMXBean {
+    String getName();
+
+    long getCount();
+
+    double getMeanNanos();
+
+    long getP50Nanos();
+
+    long getP99Nanos();
+
+    long getP999Nanos();
+
+    long getMaxNanos();
+
+    void reset();
+}
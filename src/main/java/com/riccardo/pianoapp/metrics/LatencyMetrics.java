@@ -0,0 +1,106 @@
+package com.riccardo.pianoapp.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The latency histograms of the application, shared by the components that record them.
+ * <ul>
+ *     <li>{@code inputToNoteOn}: from the arrival of a MIDI input event to the {@code noteOn} call.</li>
+ *     <li>{@code triggerLateness}: how late a scheduled note is played compared with its time on the playback
+ *     clock.</li>
+ *     <li>{@code fxPulse}: the time spent in the render loop on each JavaFX pulse.</li>
+ * </ul>
+ * The histograms are published as MBeans under {@value #DOMAIN}, and can be written to the file named by the
+ * {@value #DUMP_PROPERTY} system property at shutdown.
+ */
+public final class LatencyMetrics {
+    public static final String DOMAIN = "com.riccardo.pianoapp";
+    public static final String DUMP_PROPERTY = "pianoapp.latency.dump";
+
+    private static final LatencyMetrics INSTANCE = new LatencyMetrics();
+
+    private final LatencyHistogram inputToNoteOn = new LatencyHistogram("inputToNoteOn");
+    private final LatencyHistogram triggerLateness = new LatencyHistogram("triggerLateness");
+    private final LatencyHistogram fxPulse = new LatencyHistogram("fxPulse");
+
+    private LatencyMetrics() {
+    }
+
+    public static LatencyMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    public LatencyHistogram getInputToNoteOn() {
+        return inputToNoteOn;
+    }
+
+    public LatencyHistogram getTriggerLateness() {
+        return triggerLateness;
+    }
+
+    public LatencyHistogram getFxPulse() {
+        return fxPulse;
+    }
+
+    public List<LatencyHistogram> getHistograms() {
+        return List.of(inputToNoteOn, triggerLateness, fxPulse);
+    }
+
+    /**
+     * Registers the histograms with the platform MBean server. Calling it again has no effect.
+     */
+    public synchronized void registerMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (LatencyHistogram histogram : getHistograms()) {
+            try {
+                ObjectName name = new ObjectName(DOMAIN + ":type=Latency,name=" + histogram.getName());
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(histogram, name);
+                }
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Returns a one-line report per histogram with its percentiles.
+     *
+     * @return The report.
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder();
+        for (LatencyHistogram histogram : getHistograms()) {
+            summary.append(histogram).append('\n');
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Writes the report and the bucket counts of every histogram to the file named by {@value #DUMP_PROPERTY}, if the
+     * property is set.
+     */
+    public void dumpIfConfigured() {
+        String file = System.getProperty(DUMP_PROPERTY);
+        if (file == null || file.isBlank()) {
+            return;
+        }
+        StringBuilder dump = new StringBuilder(summary());
+        dump.append("\nhistogram,lowerNanos,upperNanos,count\n");
+        for (LatencyHistogram histogram : getHistograms()) {
+            histogram.appendBuckets(dump);
+        }
+        try {
+            Files.writeString(Path.of(file), dump);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.riccardo.pianoapp.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records when each phase of the application startup ran, on which thread, relative to the start of the JVM.
+ * <p>
+ * Phases are recorded from any thread. Milestones such as the first note played are recorded once, so the report
+ * shows the time to first note next to the phases that led to it. The first note is recorded on the real-time playback
+ * and input threads, so it only stores a timestamp; the report is built by whoever reads it. The application logs
+ * the report only when started with {@code -D}{@value #REPORT_PROPERTY}{@code =true}.
+ */
+public final class StartupTimeline {
+    public static final String REPORT_PROPERTY = "pianoapp.startupReport";
+
+    private static final StartupTimeline INSTANCE = new StartupTimeline();
+    private static final String FIRST_NOTE = "first-note";
+    private static final long FIRST_NOTE_POLL_MILLIS = 100;
+
+    /**
+     * A phase of the startup. Milestones have the same start and end.
+     */
+    public record Phase(String name, String thread, long startNanos, long endNanos) {
+        public double durationMillis() {
+            return (endNanos - startNanos) / 1e6;
+        }
+    }
+
+    private final long originNanos;
+    private final List<Phase> phases = new ArrayList<>();
+    private final Set<String> milestones = ConcurrentHashMap.newKeySet();
+    private final AtomicLong firstNoteNanos = new AtomicLong();
+    private volatile String firstNoteThread;
+
+    private StartupTimeline() {
+        this.originNanos = System.nanoTime() - ManagementFactory.getRuntimeMXBean().getUptime() * 1_000_000;
+    }
+
+    public static StartupTimeline getInstance() {
+        return INSTANCE;
+    }
+
+    public static boolean isReportEnabled() {
+        return Boolean.getBoolean(REPORT_PROPERTY);
+    }
+
+    /**
+     * Returns the current time, to be passed to {@link #record} at the end of a phase.
+     *
+     * @return The current time in nanoseconds.
+     */
+    public long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a phase that started at the given time and ends now, on the current thread.
+     *
+     * @param name       The name of the phase.
+     * @param startNanos The start of the phase, from {@link #now()}.
+     */
+    public void record(String name, long startNanos) {
+        Phase phase = new Phase(name, Thread.currentThread().getName(), startNanos, System.nanoTime());
+        synchronized (phases) {
+            phases.add(phase);
+        }
+    }
+
+    /**
+     * Records an instant the first time it is reached; later calls with the same name are ignored.
+     *
+     * @param name The name of the milestone.
+     * @return {@code true} if this call recorded the milestone.
+     */
+    public boolean milestone(String name) {
+        if (!milestones.add(name)) {
+            return false;
+        }
+        record(name, System.nanoTime());
+        return true;
+    }
+
+    /**
+     * Records the time to first note the first time a note is played. Nothing is allocated, printed or locked, so this
+     * can be called on every note from a real-time thread; later calls only read an atomic value.
+     */
+    public void firstNote() {
+        if (firstNoteNanos.get() == 0) {
+            long now = System.nanoTime();
+            if (firstNoteNanos.compareAndSet(0, now)) {
+                firstNoteThread = Thread.currentThread().getName();
+            }
+        }
+    }
+
+    public boolean isFirstNotePlayed() {
+        return firstNoteThread != null;
+    }
+
+    /**
+     * Waits until the first note has been played, polling so that {@link #firstNote()} does not have to signal.
+     *
+     * @throws InterruptedException If the waiting thread is interrupted.
+     */
+    public void awaitFirstNote() throws InterruptedException {
+        while (!isFirstNotePlayed()) {
+            TimeUnit.MILLISECONDS.sleep(FIRST_NOTE_POLL_MILLIS);
+        }
+    }
+
+    public List<Phase> getPhases() {
+        List<Phase> copy;
+        synchronized (phases) {
+            copy = new ArrayList<>(phases);
+        }
+        String thread = firstNoteThread;
+        if (thread != null) {
+            copy.add(new Phase(FIRST_NOTE, thread, firstNoteNanos.get(), firstNoteNanos.get()));
+        }
+        return List.copyOf(copy);
+    }
+
+    /**
+     * Returns the phases in start order, with their start and end relative to the start of the JVM.
+     *
+     * @return The report, one phase per line.
+     */
+    public String report() {
+        List<Phase> sorted = new ArrayList<>(getPhases());
+        sorted.sort(Comparator.comparingLong(Phase::startNanos));
+        StringBuilder report = new StringBuilder("Startup timeline (ms since JVM start):\n");
+        for (Phase phase : sorted) {
+            report.append(String.format("  %8.1f -> %8.1f  %7.1f ms  %-22s [%s]%n",
+                    (phase.startNanos() - originNanos) / 1e6, (phase.endNanos() - originNanos) / 1e6,
+                    phase.durationMillis(), phase.name(), phase.thread()));
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,284 @@
+package com.riccardo.pianoapp.midi;
+
+import javax.sound.midi.ShortMessage;
+import java.util.Arrays;
+
+/**
+ * Immutable, time-sorted list of the channel messages of a sequence that are not notes: program changes, controller
+ * changes and pitch bends.
+ * <p>
+ * The list is compiled together with the {@link NoteSchedule}, so playback can send these messages to their channel
+ * at their time, and can restore the state of every channel when it starts in the middle of the sequence. The state
+ * of the channels is kept at a checkpoint every {@value #CHECKPOINT_INTERVAL} events, so restoring it takes the same
+ * time wherever playback starts.
+ */
+public final class ChannelEvents {
+    private static final int INDEX_BITS = 24;
+    private static final long MAX_SORTABLE_TICK = Long.MAX_VALUE >>> INDEX_BITS;
+    // Per channel, slots 0-119 hold controllers 0-119, 128 the program and 129 the pitch bend; 120-127 stay unused
+    // because channel mode messages are not chased.
+    private static final int PROGRAM_SLOT = 128;
+    private static final int PITCH_BEND_SLOT = 129;
+    private static final int CHASE_SLOTS = 130;
+    private static final int CHECKPOINT_INTERVAL = 256;
+
+    /**
+     * The size of the buffer passed to {@link #getChaseEvents(int, int[])}.
+     */
+    public static final int CHASE_BUFFER_SIZE = 16 * CHASE_SLOTS;
+
+    private final long[] ticks;
+    private final double[] micros;
+    private final int[] messages;
+    private final int[] checkpointOffsets;
+    private final int[] checkpointEvents;
+
+    private ChannelEvents(long[] ticks, int[] messages, TempoMap tempoMap) {
+        this.ticks = ticks;
+        this.messages = messages;
+        this.micros = new double[ticks.length];
+        for (int i = 0; i < ticks.length; i++) {
+            micros[i] = tempoMap.tickToMicros(ticks[i]);
+        }
+
+        // Before every CHECKPOINT_INTERVAL-th event, the last event of each slot, in slot order.
+        int checkpoints = ticks.length / CHECKPOINT_INTERVAL + 1;
+        this.checkpointOffsets = new int[checkpoints + 1];
+        int[] lastEvents = new int[CHASE_BUFFER_SIZE];
+        Arrays.fill(lastEvents, -1);
+        int[] events = new int[64];
+        int eventCount = 0;
+        for (int checkpoint = 0; checkpoint < checkpoints; checkpoint++) {
+            int first = checkpoint * CHECKPOINT_INTERVAL;
+            for (int i = Math.max(0, first - CHECKPOINT_INTERVAL); i < first; i++) {
+                int slot = chaseSlot(i);
+                if (slot >= 0) {
+                    lastEvents[getChannel(i) * CHASE_SLOTS + slot] = i;
+                }
+            }
+            for (int index : lastEvents) {
+                if (index >= 0) {
+                    if (eventCount == events.length) {
+                        events = Arrays.copyOf(events, eventCount * 2);
+                    }
+                    events[eventCount++] = index;
+                }
+            }
+            checkpointOffsets[checkpoint + 1] = eventCount;
+        }
+        this.checkpointEvents = Arrays.copyOf(events, eventCount);
+    }
+
+    public int size() {
+        return ticks.length;
+    }
+
+    public long getTick(int index) {
+        return ticks[index];
+    }
+
+    /**
+     * Returns the time at which an event is played.
+     *
+     * @param index The index of the event.
+     * @return The time in microseconds from the start of the sequence.
+     */
+    public double getMicros(int index) {
+        return micros[index];
+    }
+
+    public int getCommand(int index) {
+        return messages[index] & 0xF0;
+    }
+
+    public int getChannel(int index) {
+        return messages[index] & 0x0F;
+    }
+
+    public int getData1(int index) {
+        return (messages[index] >>> 8) & 0x7F;
+    }
+
+    public int getData2(int index) {
+        return (messages[index] >>> 16) & 0x7F;
+    }
+
+    /**
+     * Finds the first event at or after the given tick.
+     *
+     * @param tick The tick to search for.
+     * @return The index of the first event with a tick {@code >= tick}, or {@link #size()} if there is none.
+     */
+    public int firstIndexAtOrAfter(long tick) {
+        int low = 0;
+        int high = ticks.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ticks[mid] < tick) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the events that restore the state of every channel before the given event: the last program, controller
+     * values and pitch bend set on each channel, so playback started in the middle of a sequence sounds as if it had
+     * been played from the start. The search starts from the nearest checkpoint and looks at fewer than
+     * {@value #CHECKPOINT_INTERVAL} events, and nothing is allocated, so it can run on the playback thread.
+     *
+     * @param endIndex The index of the first event not to chase.
+     * @param buffer   A buffer of at least {@link #CHASE_BUFFER_SIZE} entries, which receives the indices of the events
+     *                 to send, in the order they must be sent.
+     * @return The number of events written to the buffer.
+     */
+    public int getChaseEvents(int endIndex, int[] buffer) {
+        lastEvents(endIndex, buffer);
+        // Compacted in place: the write position never passes the read position.
+        int count = 0;
+        for (int i = 0; i < CHASE_BUFFER_SIZE; i++) {
+            if (buffer[i] >= 0) {
+                buffer[count++] = buffer[i];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the events between two ticks, preceded by the events that restore the state of every channel at the
+     * first tick, which are moved to that tick. A program, controller or pitch bend changed between the two ticks and
+     * never set before is restored to its default value, so the slice sounds the same every time it is repeated.
+     *
+     * @param fromTick The first tick of the slice.
+     * @param toTick   The tick at which the slice ends, exclusive.
+     * @param tempoMap The tempo map of the sequence.
+     * @return The events of the slice.
+     */
+    ChannelEvents slice(long fromTick, long toTick, TempoMap tempoMap) {
+        int first = firstIndexAtOrAfter(fromTick);
+        int last = firstIndexAtOrAfter(toTick);
+        int[] lastEvents = new int[CHASE_BUFFER_SIZE];
+        lastEvents(first, lastEvents);
+        boolean[] changed = new boolean[lastEvents.length];
+        for (int i = first; i < last; i++) {
+            int slot = chaseSlot(i);
+            if (slot >= 0) {
+                changed[getChannel(i) * CHASE_SLOTS + slot] = true;
+            }
+        }
+        int[] chase = new int[lastEvents.length];
+        int count = 0;
+        for (int i = 0; i < lastEvents.length; i++) {
+            if (lastEvents[i] >= 0) {
+                chase[count++] = messages[lastEvents[i]];
+            } else if (changed[i]) {
+                chase[count++] = defaultMessage(i / CHASE_SLOTS, i % CHASE_SLOTS);
+            }
+        }
+        long[] sliceTicks = new long[count + last - first];
+        int[] sliceMessages = new int[sliceTicks.length];
+        Arrays.fill(sliceTicks, 0, count, fromTick);
+        System.arraycopy(chase, 0, sliceMessages, 0, count);
+        System.arraycopy(ticks, first, sliceTicks, count, last - first);
+        System.arraycopy(messages, first, sliceMessages, count, last - first);
+        return new ChannelEvents(sliceTicks, sliceMessages, tempoMap);
+    }
+
+    /**
+     * Fills, for each channel and chased slot, the index of the last event before {@code endIndex}, or -1, starting
+     * from the checkpoint before it. Slots are ordered so that bank select and the other controllers go before the
+     * program change they may affect.
+     */
+    private void lastEvents(int endIndex, int[] lastEvents) {
+        Arrays.fill(lastEvents, 0, CHASE_BUFFER_SIZE, -1);
+        int checkpoint = endIndex / CHECKPOINT_INTERVAL;
+        for (int i = checkpointOffsets[checkpoint]; i < checkpointOffsets[checkpoint + 1]; i++) {
+            int index = checkpointEvents[i];
+            lastEvents[getChannel(index) * CHASE_SLOTS + chaseSlot(index)] = index;
+        }
+        for (int i = checkpoint * CHECKPOINT_INTERVAL; i < endIndex; i++) {
+            int slot = chaseSlot(i);
+            if (slot >= 0) {
+                lastEvents[getChannel(i) * CHASE_SLOTS + slot] = i;
+            }
+        }
+    }
+
+    private int chaseSlot(int index) {
+        return switch (getCommand(index)) {
+            case ShortMessage.PROGRAM_CHANGE -> PROGRAM_SLOT;
+            case ShortMessage.PITCH_BEND -> PITCH_BEND_SLOT;
+            // Channel mode messages (120-127) act on the notes sounding at the time and are not chased.
+            default -> getData1(index) < 120 ? getData1(index) : -1;
+        };
+    }
+
+    /**
+     * Returns the General MIDI reset value of a chased slot, packed as a message.
+     */
+    private static int defaultMessage(int channel, int slot) {
+        return switch (slot) {
+            case PROGRAM_SLOT -> ShortMessage.PROGRAM_CHANGE | channel;
+            case PITCH_BEND_SLOT -> ShortMessage.PITCH_BEND | channel | (64 << 16);
+            default -> {
+                int value = switch (slot) {
+                    case 7 -> 100; // Volume
+                    case 10 -> 64; // Pan
+                    case 11, 100, 101 -> 127; // Expression and null RPN
+                    default -> 0;
+                };
+                yield ShortMessage.CONTROL_CHANGE | channel | (slot << 8) | (value << 16);
+            }
+        };
+    }
+
+    /**
+     * Collects the program changes, controller changes and pitch bends of all tracks.
+     */
+    static final class Builder {
+        private long[] ticks = new long[64];
+        private int[] messages = new int[64];
+        private int size;
+
+        void add(long tick, ShortMessage sm) {
+            int command = sm.getCommand();
+            if (command != ShortMessage.PROGRAM_CHANGE && command != ShortMessage.CONTROL_CHANGE && command != ShortMessage.PITCH_BEND) {
+                return;
+            }
+            if (size == ticks.length) {
+                ticks = Arrays.copyOf(ticks, size * 2);
+                messages = Arrays.copyOf(messages, size * 2);
+            }
+            ticks[size] = tick;
+            messages[size] = command | sm.getChannel() | (sm.getData1() << 8) | (sm.getData2() << 16);
+            size++;
+        }
+
+        ChannelEvents build(TempoMap tempoMap) {
+            if (size >= (1 << INDEX_BITS)) {
+                throw new IllegalStateException("Too many channel events in sequence: " + size);
+            }
+            // Same stable merge of the tracks as the note schedule: sort on (tick, insertion index).
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                if (ticks[i] > MAX_SORTABLE_TICK) {
+                    throw new IllegalStateException("Event tick out of range: " + ticks[i]);
+                }
+                order[i] = (ticks[i] << INDEX_BITS) | i;
+            }
+            Arrays.sort(order);
+
+            long[] sortedTicks = new long[size];
+            int[] sortedMessages = new int[size];
+            int mask = (1 << INDEX_BITS) - 1;
+            for (int i = 0; i < size; i++) {
+                int source = (int) (order[i] & mask);
+                sortedTicks[i] = ticks[source];
+                sortedMessages[i] = messages[source];
+            }
+            return new ChannelEvents(sortedTicks, sortedMessages, tempoMap);
+        }
+    }
+}
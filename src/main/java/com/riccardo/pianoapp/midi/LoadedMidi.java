@@ -0,0 +1,22 @@
+package com.riccardo.pianoapp.midi;
+
+import javax.sound.midi.Sequence;
+import java.io.File;
+
+/**
+ * A loaded MIDI file together with everything computed from it, switched in as a whole by the controller.
+ *
+ * @param file     The file the sequence was read from.
+ * @param sequence The MIDI sequence.
+ * @param analysis The analysis of the sequence, including its tempo map and note schedule.
+ */
+public record LoadedMidi(File file, Sequence sequence, SequenceAnalysis analysis) {
+
+    public NoteSchedule schedule() {
+        return analysis.getSchedule();
+    }
+
+    public TempoMap tempoMap() {
+        return analysis.getTempoMap();
+    }
+}
@@ -0,0 +1,53 @@
+package com.riccardo.pianoapp.midi;
+
+/**
+ * A range of a sequence played over and over, e.g. to practise a few bars. The notes and channel events of the range
+ * are sliced from the schedule once, so every repetition plays the same precomputed schedule.
+ *
+ * @param source    The schedule of the whole sequence.
+ * @param startTick The first tick of the loop (A).
+ * @param endTick   The tick at which playback wraps back to the start of the loop (B).
+ * @param schedule  The notes and channel events between A and B, sliced from the source.
+ */
+public record LoopRegion(NoteSchedule source, long startTick, long endTick, NoteSchedule schedule) {
+
+    /**
+     * Slices a loop from a schedule.
+     *
+     * @param source    The schedule of the whole sequence.
+     * @param startTick The first tick of the loop.
+     * @param endTick   The tick at which the loop wraps, after {@code startTick}.
+     * @return The loop.
+     * @see NoteSchedule#slice(long, long)
+     */
+    public static LoopRegion of(NoteSchedule source, long startTick, long endTick) {
+        return new LoopRegion(source, startTick, endTick, source.slice(startTick, endTick));
+    }
+
+    public boolean contains(long tick) {
+        return tick >= startTick && tick < endTick;
+    }
+
+    public double startMicros() {
+        return source.getTempoMap().tickToMicros(startTick);
+    }
+
+    public double lengthMicros() {
+        return source.getTempoMap().tickToMicros(endTick) - startMicros();
+    }
+
+    /**
+     * Maps a position of the clock, which keeps running across repetitions, to the position in the sequence.
+     *
+     * @param positionMicros The position of the clock in microseconds.
+     * @return The position within the loop, or the position itself if the loop has not been reached yet.
+     */
+    public double wrap(double positionMicros) {
+        double startMicros = startMicros();
+        double lengthMicros = lengthMicros();
+        if (positionMicros < startMicros + lengthMicros) {
+            return positionMicros;
+        }
+        return startMicros + (positionMicros - startMicros) % lengthMicros;
+    }
+}
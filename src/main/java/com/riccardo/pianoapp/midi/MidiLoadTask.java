@@ -0,0 +1,113 @@
+package com.riccardo.pianoapp.midi;
+
+import javafx.concurrent.Task;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Reads and analyses a MIDI file off the JavaFX thread.
+ * <p>
+ * Progress covers reading the file and the single analysis pass of {@link SequenceAnalyzer}; the task checks for
+ * cancellation while doing both. Run it with {@link #startOnVirtualThread()}.
+ */
+public class MidiLoadTask extends Task<LoadedMidi> {
+    private static final double READ_WORK = 0.5;
+    private static final double TOTAL_WORK = 1.0;
+
+    private final File file;
+
+    /**
+     * Constructor for MidiLoadTask.
+     *
+     * @param file The MIDI file to load.
+     */
+    public MidiLoadTask(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Starts the task on a new virtual thread.
+     *
+     * @return The thread running the task.
+     */
+    public Thread startOnVirtualThread() {
+        return Thread.ofVirtual().name("midi-loader-" + file.getName()).start(this);
+    }
+
+    @Override
+    protected LoadedMidi call() throws Exception {
+        updateMessage("Loading " + file.getName());
+        long fileSize = Math.max(1, file.length());
+
+        Sequence sequence;
+        try (InputStream in = new BufferedInputStream(new ProgressInputStream(Files.newInputStream(file.toPath()), fileSize))) {
+            sequence = MidiSystem.getSequence(in);
+        }
+        checkCancelled();
+
+        SequenceAnalysis analysis = SequenceAnalyzer.analyze(sequence, (eventsDone, eventsTotal) -> {
+            checkCancelled();
+            updateProgress(READ_WORK + (TOTAL_WORK - READ_WORK) * eventsDone / Math.max(1, eventsTotal), TOTAL_WORK);
+        });
+        checkCancelled();
+
+        return new LoadedMidi(file, sequence, analysis);
+    }
+
+    private void checkCancelled() {
+        if (isCancelled()) {
+            throw new CancellationException("Loading of " + file.getName() + " cancelled");
+        }
+    }
+
+    /**
+     * Reports the bytes read as task progress and stops reading once the task is cancelled.
+     */
+    private final class ProgressInputStream extends FilterInputStream {
+        private final long size;
+        private long read;
+
+        ProgressInputStream(InputStream in, long size) {
+            super(in);
+            this.size = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                advance(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                advance(count);
+            }
+            return count;
+        }
+
+        private void advance(int count) throws InterruptedIOException {
+            if (isCancelled()) {
+                throw new InterruptedIOException("Loading of " + file.getName() + " cancelled");
+            }
+            read += count;
+            updateProgress(READ_WORK * Math.min(read, size) / size, TOTAL_WORK);
+        }
+    }
+}
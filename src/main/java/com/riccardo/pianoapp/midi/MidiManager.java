@@ -46,48 +46,6 @@ public class MidiManager {
         }
     }
 
-    public int getBpmFromMidi(Sequence sequence) {
-        int bpm = 120;
-        try {
-            for (Track track : sequence.getTracks()) {
-                for (int i = 0; i < track.size(); i++) {
-                    MidiEvent event = track.get(i);
-                    if (event.getMessage() instanceof MetaMessage) {
-                        MetaMessage metaMessage = (MetaMessage) event.getMessage();
-                        if (metaMessage.getType() == 81) {
-                            byte[] data = metaMessage.getData();
-                            int microsecondsPerQuarterNote = ((data[0] & 0xFF) << 16) | ((data[1] & 0xFF) << 8) | (data[2] & 0xFF);
-                            bpm = (int) (60000000.0 / microsecondsPerQuarterNote);
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return bpm;
-    }
-
-    public int countTotalNotes(Sequence sequence) {
-        int totalNotes = 0;
-        try {
-            for (Track track : sequence.getTracks()) {
-                for (int i = 0; i < track.size(); i++) {
-                    MidiEvent event = track.get(i);
-                    if (event.getMessage() instanceof ShortMessage) {
-                        ShortMessage msg = (ShortMessage) event.getMessage();
-                        if (msg.getCommand() == ShortMessage.NOTE_ON) {
-                            totalNotes++;
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return totalNotes;
-    }
-
     public void stopMidi() {
         // Ferma il sequencer e memorizza la posizione corrente
         currentTick = sequencer.getTickPosition();
@@ -0,0 +1,366 @@
+package com.riccardo.pianoapp.midi;
+
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import java.util.Arrays;
+
+/**
+ * Immutable, time-sorted list of the notes contained in a MIDI sequence.
+ * <p>
+ * The schedule is compiled once per loaded {@link Sequence}: NOTE_ON and NOTE_OFF events are paired in a single
+ * linear pass over each track using a per-key stack, so consumers never have to re-walk the tracks. Note times are
+ * precomputed through the {@link TempoMap} of the sequence. The other channel messages are kept alongside in
+ * {@link ChannelEvents}.
+ */
+public final class NoteSchedule {
+    private static final int KEY_SLOTS = 16 * 128;
+    private static final int INDEX_BITS = 24;
+    private static final long MAX_SORTABLE_TICK = Long.MAX_VALUE >>> INDEX_BITS;
+    private static final int CHECKPOINT_INTERVAL = 256;
+
+    private final long[] startTicks;
+    private final long[] endTicks;
+    private final double[] startMicros;
+    private final double[] endMicros;
+    private final byte[] keys;
+    private final byte[] velocities;
+    private final byte[] channels;
+    private final int resolution;
+    private final long lengthTicks;
+    private final TempoMap tempoMap;
+    private final ChannelEvents channelEvents;
+    private final int[] checkpointOffsets;
+    private final int[] checkpointNotes;
+
+    private NoteSchedule(long[] startTicks, long[] endTicks, byte[] keys, byte[] velocities, byte[] channels, int resolution, long lengthTicks, TempoMap tempoMap, ChannelEvents channelEvents) {
+        this.startTicks = startTicks;
+        this.endTicks = endTicks;
+        this.startMicros = new double[startTicks.length];
+        this.endMicros = new double[startTicks.length];
+        for (int i = 0; i < startTicks.length; i++) {
+            startMicros[i] = tempoMap.tickToMicros(startTicks[i]);
+            endMicros[i] = tempoMap.tickToMicros(endTicks[i]);
+        }
+        this.keys = keys;
+        this.velocities = velocities;
+        this.channels = channels;
+        this.resolution = resolution;
+        this.lengthTicks = lengthTicks;
+        this.tempoMap = tempoMap;
+        this.channelEvents = channelEvents;
+
+        // Every CHECKPOINT_INTERVAL notes, the notes started earlier that are still held at the start of that note.
+        int checkpoints = (startTicks.length + CHECKPOINT_INTERVAL - 1) / CHECKPOINT_INTERVAL;
+        this.checkpointOffsets = new int[checkpoints + 1];
+        int[] held = new int[64];
+        int heldCount = 0;
+        int[] notes = new int[64];
+        int noteCount = 0;
+        for (int checkpoint = 0; checkpoint < checkpoints; checkpoint++) {
+            int first = checkpoint * CHECKPOINT_INTERVAL;
+            if (checkpoint > 0) {
+                for (int i = first - CHECKPOINT_INTERVAL; i < first; i++) {
+                    if (heldCount == held.length) {
+                        held = Arrays.copyOf(held, heldCount * 2);
+                    }
+                    held[heldCount++] = i;
+                }
+            }
+            int kept = 0;
+            for (int i = 0; i < heldCount; i++) {
+                if (endTicks[held[i]] > startTicks[first]) {
+                    held[kept++] = held[i];
+                }
+            }
+            heldCount = kept;
+            if (noteCount + heldCount > notes.length) {
+                notes = Arrays.copyOf(notes, Math.max(notes.length * 2, noteCount + heldCount));
+            }
+            System.arraycopy(held, 0, notes, noteCount, heldCount);
+            noteCount += heldCount;
+            checkpointOffsets[checkpoint + 1] = noteCount;
+        }
+        this.checkpointNotes = Arrays.copyOf(notes, noteCount);
+    }
+
+    /**
+     * Compiles the note schedule of a sequence.
+     *
+     * @param sequence The MIDI sequence to compile.
+     * @return The compiled schedule, sorted by start tick.
+     * @see SequenceAnalyzer
+     */
+    public static NoteSchedule compile(Sequence sequence) {
+        return SequenceAnalyzer.analyze(sequence).getSchedule();
+    }
+
+    public int size() {
+        return startTicks.length;
+    }
+
+    public boolean isEmpty() {
+        return startTicks.length == 0;
+    }
+
+    public long getStartTick(int index) {
+        return startTicks[index];
+    }
+
+    public long getEndTick(int index) {
+        return endTicks[index];
+    }
+
+    public long getDurationTicks(int index) {
+        return endTicks[index] - startTicks[index];
+    }
+
+    /**
+     * Returns the time at which a note starts.
+     *
+     * @param index The index of the note.
+     * @return The start time in microseconds from the start of the sequence.
+     */
+    public double getStartMicros(int index) {
+        return startMicros[index];
+    }
+
+    /**
+     * Returns the time at which a note ends.
+     *
+     * @param index The index of the note.
+     * @return The end time in microseconds from the start of the sequence.
+     */
+    public double getEndMicros(int index) {
+        return endMicros[index];
+    }
+
+    public int getKey(int index) {
+        return keys[index];
+    }
+
+    public int getVelocity(int index) {
+        return velocities[index];
+    }
+
+    public int getChannel(int index) {
+        return channels[index];
+    }
+
+    public int getResolution() {
+        return resolution;
+    }
+
+    public long getLengthTicks() {
+        return lengthTicks;
+    }
+
+    public double getLengthMicros() {
+        return tempoMap.tickToMicros(lengthTicks);
+    }
+
+    public TempoMap getTempoMap() {
+        return tempoMap;
+    }
+
+    /**
+     * Returns the program changes, controller changes and pitch bends played alongside the notes.
+     *
+     * @return The channel events of the sequence.
+     */
+    public ChannelEvents getChannelEvents() {
+        return channelEvents;
+    }
+
+    /**
+     * Finds the first note starting at or after the given tick.
+     *
+     * @param tick The tick to search for.
+     * @return The index of the first note with a start tick {@code >= tick}, or {@link #size()} if there is none.
+     */
+    public int firstIndexAtOrAfter(long tick) {
+        int low = 0;
+        int high = startTicks.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (startTicks[mid] < tick) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the notes that started before the given tick and are still held at that tick, e.g. to play them again when
+     * playback starts there. The schedule keeps the held notes at a checkpoint every {@value #CHECKPOINT_INTERVAL}
+     * notes, so the search looks at the notes of one checkpoint and at most {@value #CHECKPOINT_INTERVAL} more,
+     * whatever the length of the sequence.
+     *
+     * @param tick The tick to search for.
+     * @return The indices of the held notes, in ascending order.
+     */
+    public int[] getHeldNotes(long tick) {
+        int end = firstIndexAtOrAfter(tick);
+        if (end == 0) {
+            return new int[0];
+        }
+        // The checkpoint must start before the tick, or notes ending between the tick and the checkpoint are missed.
+        int checkpoint = (end - 1) / CHECKPOINT_INTERVAL;
+        int checkpointStart = checkpointOffsets[checkpoint];
+        int checkpointEnd = checkpointOffsets[checkpoint + 1];
+        int[] held = new int[checkpointEnd - checkpointStart + end - checkpoint * CHECKPOINT_INTERVAL];
+        int count = 0;
+        for (int i = checkpointStart; i < checkpointEnd; i++) {
+            if (endTicks[checkpointNotes[i]] > tick) {
+                held[count++] = checkpointNotes[i];
+            }
+        }
+        for (int i = checkpoint * CHECKPOINT_INTERVAL; i < end; i++) {
+            if (endTicks[i] > tick) {
+                held[count++] = i;
+            }
+        }
+        int[] result = Arrays.copyOf(held, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Returns the part of the schedule between two ticks, e.g. to play it in a loop. The notes held at the first tick
+     * start at that tick and the notes still held at the last tick end there, so the slice can be repeated without
+     * hanging notes; its channel events start with the state of every channel at the first tick. Times stay relative
+     * to the start of the sequence.
+     *
+     * @param fromTick The first tick of the slice.
+     * @param toTick   The tick at which the slice ends, exclusive; it is the length of the slice.
+     * @return The notes and channel events of the slice.
+     */
+    public NoteSchedule slice(long fromTick, long toTick) {
+        if (fromTick < 0 || toTick <= fromTick) {
+            throw new IllegalArgumentException("Invalid slice: " + fromTick + " to " + toTick);
+        }
+        int[] held = getHeldNotes(fromTick);
+        int first = firstIndexAtOrAfter(fromTick);
+        int last = firstIndexAtOrAfter(toTick);
+        int size = held.length + last - first;
+        long[] sliceStarts = new long[size];
+        long[] sliceEnds = new long[size];
+        byte[] sliceKeys = new byte[size];
+        byte[] sliceVelocities = new byte[size];
+        byte[] sliceChannels = new byte[size];
+        for (int i = 0; i < size; i++) {
+            int source = i < held.length ? held[i] : first + i - held.length;
+            sliceStarts[i] = Math.max(startTicks[source], fromTick);
+            sliceEnds[i] = Math.min(endTicks[source], toTick);
+            sliceKeys[i] = keys[source];
+            sliceVelocities[i] = velocities[source];
+            sliceChannels[i] = channels[source];
+        }
+        return new NoteSchedule(sliceStarts, sliceEnds, sliceKeys, sliceVelocities, sliceChannels, resolution, toTick, tempoMap, channelEvents.slice(fromTick, toTick, tempoMap));
+    }
+
+    /**
+     * Pairs NOTE_ON and NOTE_OFF events into notes, one track at a time. Events of a track must be added in order and
+     * followed by {@link #endTrack(long)}.
+     */
+    static final class Builder {
+        private final int[][] openNotes = new int[KEY_SLOTS][];
+        private final int[] openCounts = new int[KEY_SLOTS];
+        private long[] startTicks = new long[256];
+        private long[] endTicks = new long[256];
+        private byte[] keys = new byte[256];
+        private byte[] velocities = new byte[256];
+        private byte[] channels = new byte[256];
+        private int size;
+
+        void add(long tick, ShortMessage sm) {
+            int command = sm.getCommand();
+            if (command == ShortMessage.NOTE_ON && sm.getData2() > 0) {
+                noteOn(tick, sm.getChannel(), sm.getData1(), sm.getData2());
+            } else if (command == ShortMessage.NOTE_OFF || command == ShortMessage.NOTE_ON) {
+                noteOff(tick, sm.getChannel(), sm.getData1());
+            }
+        }
+
+        /**
+         * Closes the notes of the current track that were never released.
+         *
+         * @param trackEndTick The last tick of the track.
+         */
+        void endTrack(long trackEndTick) {
+            for (int slot = 0; slot < KEY_SLOTS; slot++) {
+                while (openCounts[slot] > 0) {
+                    endTicks[openNotes[slot][--openCounts[slot]]] = trackEndTick;
+                }
+            }
+        }
+
+        private void noteOn(long tick, int channel, int key, int velocity) {
+            if (size == startTicks.length) {
+                grow();
+            }
+            startTicks[size] = tick;
+            endTicks[size] = tick;
+            keys[size] = (byte) key;
+            velocities[size] = (byte) velocity;
+            channels[size] = (byte) channel;
+
+            int slot = channel * 128 + key;
+            int[] stack = openNotes[slot];
+            if (stack == null) {
+                stack = openNotes[slot] = new int[4];
+            } else if (openCounts[slot] == stack.length) {
+                stack = openNotes[slot] = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[openCounts[slot]++] = size++;
+        }
+
+        private void noteOff(long tick, int channel, int key) {
+            int slot = channel * 128 + key;
+            if (openCounts[slot] > 0) {
+                endTicks[openNotes[slot][--openCounts[slot]]] = tick;
+            }
+        }
+
+        private void grow() {
+            int capacity = startTicks.length * 2;
+            startTicks = Arrays.copyOf(startTicks, capacity);
+            endTicks = Arrays.copyOf(endTicks, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            velocities = Arrays.copyOf(velocities, capacity);
+            channels = Arrays.copyOf(channels, capacity);
+        }
+
+        NoteSchedule build(int resolution, long lengthTicks, TempoMap tempoMap, ChannelEvents channelEvents) {
+            if (size >= (1 << INDEX_BITS)) {
+                throw new IllegalStateException("Too many notes in sequence: " + size);
+            }
+            // Tracks are individually sorted, so a single sort on (startTick, insertion index) merges them stably.
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                if (startTicks[i] > MAX_SORTABLE_TICK) {
+                    throw new IllegalStateException("Note tick out of range: " + startTicks[i]);
+                }
+                order[i] = (startTicks[i] << INDEX_BITS) | i;
+            }
+            Arrays.sort(order);
+
+            long[] sortedStarts = new long[size];
+            long[] sortedEnds = new long[size];
+            byte[] sortedKeys = new byte[size];
+            byte[] sortedVelocities = new byte[size];
+            byte[] sortedChannels = new byte[size];
+            int mask = (1 << INDEX_BITS) - 1;
+            for (int i = 0; i < size; i++) {
+                int source = (int) (order[i] & mask);
+                sortedStarts[i] = startTicks[source];
+                sortedEnds[i] = endTicks[source];
+                sortedKeys[i] = keys[source];
+                sortedVelocities[i] = velocities[source];
+                sortedChannels[i] = channels[source];
+            }
+            return new NoteSchedule(sortedStarts, sortedEnds, sortedKeys, sortedVelocities, sortedChannels, resolution, lengthTicks, tempoMap, channelEvents);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.riccardo.pianoapp.midi;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Master clock of the playback position.
+ * <p>
+ * The position is expressed in microseconds of music time and advances with a monotonic time source scaled by the
+ * playback rate. Rendering, note triggering and progress all read the position from the same clock, so they cannot
+ * drift apart. The state is published as an immutable snapshot, so the clock can be read from any thread without
+ * locking.
+ */
+public class PlaybackClock {
+    private final LongSupplier nanoTime;
+    private volatile Anchor anchor = new Anchor(0, 0, 1.0, true);
+
+    /**
+     * The clock state from a given instant on: {@code positionMicros} at {@code nanos}, advancing at {@code rate}.
+     */
+    private record Anchor(long nanos, double positionMicros, double rate, boolean paused) {
+        double positionAt(long now) {
+            return paused ? positionMicros : positionMicros + (now - nanos) / 1000.0 * rate;
+        }
+    }
+
+    public PlaybackClock() {
+        this(System::nanoTime);
+    }
+
+    /**
+     * Constructor for PlaybackClock.
+     *
+     * @param nanoTime The monotonic time source, in nanoseconds.
+     */
+    public PlaybackClock(LongSupplier nanoTime) {
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Starts the clock from the given position.
+     *
+     * @param positionMicros The position, in microseconds of music time, to start from.
+     */
+    public synchronized void start(double positionMicros) {
+        anchor = new Anchor(nanoTime.getAsLong(), positionMicros, anchor.rate(), false);
+    }
+
+    /**
+     * Freezes the clock at its current position.
+     */
+    public synchronized void pause() {
+        Anchor current = anchor;
+        if (!current.paused()) {
+            long now = nanoTime.getAsLong();
+            anchor = new Anchor(now, current.positionAt(now), current.rate(), true);
+        }
+    }
+
+    /**
+     * Restarts the clock from the position at which it was paused.
+     */
+    public synchronized void resume() {
+        Anchor current = anchor;
+        if (current.paused()) {
+            anchor = new Anchor(nanoTime.getAsLong(), current.positionMicros(), current.rate(), false);
+        }
+    }
+
+    /**
+     * Moves the clock to the given position, keeping its running state.
+     *
+     * @param positionMicros The new position in microseconds of music time.
+     */
+    public synchronized void seek(double positionMicros) {
+        Anchor current = anchor;
+        anchor = new Anchor(nanoTime.getAsLong(), positionMicros, current.rate(), current.paused());
+    }
+
+    /**
+     * Changes the playback rate from the current position on.
+     *
+     * @param rate The new rate; 1.0 plays in real time.
+     */
+    public synchronized void setRate(double rate) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("Playback rate must be positive: " + rate);
+        }
+        Anchor current = anchor;
+        long now = nanoTime.getAsLong();
+        anchor = new Anchor(now, current.positionAt(now), rate, current.paused());
+    }
+
+    public double getRate() {
+        return anchor.rate();
+    }
+
+    public boolean isPaused() {
+        return anchor.paused();
+    }
+
+    /**
+     * Returns the current position.
+     *
+     * @return The position in microseconds of music time.
+     */
+    public double getPositionMicros() {
+        return anchor.positionAt(nanoTime.getAsLong());
+    }
+
+    /**
+     * Returns the position at a given instant of the time source, e.g. the timestamp of an animation pulse.
+     *
+     * @param nanos The instant, in nanoseconds of the time source.
+     * @return The position in microseconds of music time.
+     */
+    public double getPositionMicros(long nanos) {
+        return anchor.positionAt(nanos);
+    }
+
+    /**
+     * Converts a position into the instant of the time source at which the clock reaches it.
+     *
+     * @param positionMicros The position in microseconds of music time.
+     * @return The instant in nanoseconds, or {@link Long#MAX_VALUE} if the clock is paused.
+     */
+    public long toNanoTime(double positionMicros) {
+        Anchor current = anchor;
+        if (current.paused()) {
+            return Long.MAX_VALUE;
+        }
+        return current.nanos() + (long) ((positionMicros - current.positionMicros()) * 1000.0 / current.rate());
+    }
+}
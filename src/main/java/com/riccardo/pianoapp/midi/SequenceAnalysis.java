@@ -0,0 +1,145 @@
+package com.riccardo.pianoapp.midi;
+
+import java.util.Arrays;
+
+/**
+ * Everything the application needs to know about a loaded sequence, computed once by {@link SequenceAnalyzer}.
+ */
+public final class SequenceAnalysis {
+    private static final double PEAK_WINDOW_MICROS = 1_000_000.0;
+
+    private final TempoMap tempoMap;
+    private final NoteSchedule schedule;
+    private final int[] channelNoteCounts = new int[16];
+    private final int[] keyNoteCounts = new int[128];
+    private final int lowestKey;
+    private final int highestKey;
+    private final int peakNotesPerSecond;
+    private final int[] programs;
+
+    SequenceAnalysis(TempoMap tempoMap, NoteSchedule schedule, boolean[] programChanges, boolean[] channelsWithProgram) {
+        this.tempoMap = tempoMap;
+        this.schedule = schedule;
+
+        int lowest = -1;
+        int highest = -1;
+        for (int i = 0; i < schedule.size(); i++) {
+            int key = schedule.getKey(i);
+            channelNoteCounts[schedule.getChannel(i)]++;
+            keyNoteCounts[key]++;
+            lowest = lowest < 0 ? key : Math.min(lowest, key);
+            highest = Math.max(highest, key);
+        }
+        this.lowestKey = lowest;
+        this.highestKey = highest;
+        this.peakNotesPerSecond = computePeakNotesPerSecond(schedule);
+        this.programs = usedPrograms(programChanges, channelsWithProgram);
+    }
+
+    /**
+     * Channels that play notes without ever changing program use the default program 0.
+     */
+    private int[] usedPrograms(boolean[] programChanges, boolean[] channelsWithProgram) {
+        boolean[] used = programChanges.clone();
+        for (int channel = 0; channel < channelNoteCounts.length; channel++) {
+            if (channelNoteCounts[channel] > 0 && !channelsWithProgram[channel]) {
+                used[0] = true;
+            }
+        }
+        int count = 0;
+        int[] result = new int[used.length];
+        for (int program = 0; program < used.length; program++) {
+            if (used[program]) {
+                result[count++] = program;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Slides a one-second window over the sorted note start times.
+     */
+    private static int computePeakNotesPerSecond(NoteSchedule schedule) {
+        int peak = 0;
+        int windowStart = 0;
+        for (int i = 0; i < schedule.size(); i++) {
+            double windowEnd = schedule.getStartMicros(i);
+            while (schedule.getStartMicros(windowStart) <= windowEnd - PEAK_WINDOW_MICROS) {
+                windowStart++;
+            }
+            peak = Math.max(peak, i - windowStart + 1);
+        }
+        return peak;
+    }
+
+    public TempoMap getTempoMap() {
+        return tempoMap;
+    }
+
+    public NoteSchedule getSchedule() {
+        return schedule;
+    }
+
+    public int getNoteCount() {
+        return schedule.size();
+    }
+
+    /**
+     * Returns the programs referenced by the sequence, through program changes or by playing notes on a channel with
+     * the default program.
+     *
+     * @return The program numbers, in ascending order.
+     */
+    public int[] getPrograms() {
+        return programs.clone();
+    }
+
+    public int getChannelNoteCount(int channel) {
+        return channelNoteCounts[channel];
+    }
+
+    public int getKeyNoteCount(int key) {
+        return keyNoteCounts[key];
+    }
+
+    /**
+     * Returns the lowest key played in the sequence.
+     *
+     * @return The MIDI note value, or -1 if the sequence has no notes.
+     */
+    public int getLowestKey() {
+        return lowestKey;
+    }
+
+    /**
+     * Returns the highest key played in the sequence.
+     *
+     * @return The MIDI note value, or -1 if the sequence has no notes.
+     */
+    public int getHighestKey() {
+        return highestKey;
+    }
+
+    public double getDurationMicros() {
+        return schedule.getLengthMicros();
+    }
+
+    public int getPeakNotesPerSecond() {
+        return peakNotesPerSecond;
+    }
+
+    public double getInitialBpm() {
+        return tempoMap.getInitialBpm();
+    }
+
+    /**
+     * Returns a short, human-readable description of the sequence.
+     *
+     * @return The summary text.
+     */
+    public String getSummary() {
+        long seconds = Math.round(getDurationMicros() / 1_000_000.0);
+        return String.format("%d notes, %02d:%02d, keys %d-%d, %d tempo changes, peak %d notes/s",
+                getNoteCount(), seconds / 60, seconds % 60, lowestKey, highestKey, tempoMap.getSegmentCount() - 1, peakNotesPerSecond);
+    }
+}
@@ -0,0 +1,77 @@
+package com.riccardo.pianoapp.midi;
+
+import javax.sound.midi.*;
+
+/**
+ * Analyses a MIDI sequence in a single pass over its events.
+ * <p>
+ * The pass collects the tempo events and the other channel messages and pairs the notes at the same time; everything
+ * else in the {@link SequenceAnalysis} is derived from the resulting arrays, so no event is visited twice.
+ */
+public final class SequenceAnalyzer {
+    private static final int PROGRESS_INTERVAL = 4096;
+
+    /**
+     * Receives the progress of an analysis. Implementations may throw an unchecked exception, such as
+     * {@link java.util.concurrent.CancellationException}, to abort the analysis.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(long eventsDone, long eventsTotal);
+    }
+
+    private SequenceAnalyzer() {
+    }
+
+    public static SequenceAnalysis analyze(Sequence sequence) {
+        return analyze(sequence, (eventsDone, eventsTotal) -> {
+        });
+    }
+
+    /**
+     * Analyses a sequence.
+     *
+     * @param sequence The MIDI sequence to analyse.
+     * @param listener The listener notified of the progress of the pass.
+     * @return The analysis of the sequence.
+     */
+    public static SequenceAnalysis analyze(Sequence sequence, ProgressListener listener) {
+        Track[] tracks = sequence.getTracks();
+        long eventsTotal = 0;
+        for (Track track : tracks) {
+            eventsTotal += track.size();
+        }
+
+        TempoMap.Builder tempoBuilder = new TempoMap.Builder(sequence.getDivisionType(), sequence.getResolution());
+        NoteSchedule.Builder noteBuilder = new NoteSchedule.Builder();
+        ChannelEvents.Builder channelEventBuilder = new ChannelEvents.Builder();
+        boolean[] programs = new boolean[128];
+        boolean[] channelsWithProgram = new boolean[16];
+        long eventsDone = 0;
+        for (Track track : tracks) {
+            for (int i = 0; i < track.size(); i++) {
+                MidiEvent event = track.get(i);
+                MidiMessage message = event.getMessage();
+                if (message instanceof ShortMessage sm) {
+                    noteBuilder.add(event.getTick(), sm);
+                    channelEventBuilder.add(event.getTick(), sm);
+                    if (sm.getCommand() == ShortMessage.PROGRAM_CHANGE) {
+                        programs[sm.getData1()] = true;
+                        channelsWithProgram[sm.getChannel()] = true;
+                    }
+                } else if (message instanceof MetaMessage mm && mm.getType() == TempoMap.TEMPO_META_TYPE) {
+                    tempoBuilder.addTempo(event.getTick(), mm);
+                }
+                if (++eventsDone % PROGRESS_INTERVAL == 0) {
+                    listener.onProgress(eventsDone, eventsTotal);
+                }
+            }
+            noteBuilder.endTrack(track.ticks());
+        }
+
+        TempoMap tempoMap = tempoBuilder.build();
+        NoteSchedule schedule = noteBuilder.build(sequence.getResolution(), sequence.getTickLength(), tempoMap, channelEventBuilder.build(tempoMap));
+        listener.onProgress(eventsTotal, eventsTotal);
+        return new SequenceAnalysis(tempoMap, schedule, programs, channelsWithProgram);
+    }
+}
@@ -0,0 +1,186 @@
+package com.riccardo.pianoapp.midi;
+
+import javax.sound.midi.*;
+import java.util.Arrays;
+
+/**
+ * Converts between ticks and time for a sequence with tempo changes.
+ * <p>
+ * The map is a sorted array of tempo segments with the cumulative time at which each segment starts, so a conversion
+ * in either direction is a binary search followed by a linear interpolation inside one segment.
+ */
+public final class TempoMap {
+    public static final int TEMPO_META_TYPE = 0x51;
+    public static final int DEFAULT_MICROS_PER_QUARTER = 500_000;
+
+    private final long[] segmentTicks;
+    private final double[] segmentMicros;
+    private final double[] microsPerTick;
+    private final double ticksPerQuarter;
+
+    private TempoMap(long[] segmentTicks, double[] segmentMicros, double[] microsPerTick, double ticksPerQuarter) {
+        this.segmentTicks = segmentTicks;
+        this.segmentMicros = segmentMicros;
+        this.microsPerTick = microsPerTick;
+        this.ticksPerQuarter = ticksPerQuarter;
+    }
+
+    /**
+     * Builds the tempo map of a sequence from the tempo meta events of all its tracks.
+     *
+     * @param sequence The MIDI sequence.
+     * @return The tempo map of the sequence.
+     */
+    public static TempoMap build(Sequence sequence) {
+        Builder builder = new Builder(sequence.getDivisionType(), sequence.getResolution());
+        for (Track track : sequence.getTracks()) {
+            for (int i = 0; i < track.size(); i++) {
+                MidiEvent event = track.get(i);
+                if (event.getMessage() instanceof MetaMessage metaMessage && metaMessage.getType() == TEMPO_META_TYPE) {
+                    builder.addTempo(event.getTick(), metaMessage);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Decodes the tempo of a tempo meta message.
+     *
+     * @param metaMessage A meta message of type {@link #TEMPO_META_TYPE}.
+     * @return The tempo in microseconds per quarter note, or -1 if the message is malformed.
+     */
+    public static int microsPerQuarter(MetaMessage metaMessage) {
+        byte[] data = metaMessage.getData();
+        if (data.length < 3) {
+            return -1;
+        }
+        return ((data[0] & 0xFF) << 16) | ((data[1] & 0xFF) << 8) | (data[2] & 0xFF);
+    }
+
+    /**
+     * Converts a tick into the time at which it is played.
+     *
+     * @param tick The tick position.
+     * @return The time in microseconds from the start of the sequence.
+     */
+    public double tickToMicros(long tick) {
+        int segment = segmentForTick(tick);
+        return segmentMicros[segment] + (tick - segmentTicks[segment]) * microsPerTick[segment];
+    }
+
+    /**
+     * Converts a time into the tick played at that time.
+     *
+     * @param micros The time in microseconds from the start of the sequence.
+     * @return The tick position, rounded down.
+     */
+    public long microsToTick(double micros) {
+        int segment = segmentForMicros(micros);
+        return segmentTicks[segment] + (long) ((micros - segmentMicros[segment]) / microsPerTick[segment]);
+    }
+
+    /**
+     * Returns the tempo in effect at a tick.
+     *
+     * @param tick The tick position.
+     * @return The tempo in beats per minute.
+     */
+    public double getBpmAt(long tick) {
+        return toBpm(microsPerTick[segmentForTick(tick)]);
+    }
+
+    public double getInitialBpm() {
+        return toBpm(microsPerTick[0]);
+    }
+
+    public int getSegmentCount() {
+        return segmentTicks.length;
+    }
+
+    public long getSegmentTick(int segment) {
+        return segmentTicks[segment];
+    }
+
+    private double toBpm(double microsPerTick) {
+        return 60_000_000.0 / (microsPerTick * ticksPerQuarter);
+    }
+
+    private int segmentForTick(long tick) {
+        int index = Arrays.binarySearch(segmentTicks, tick);
+        return index >= 0 ? index : Math.max(0, -index - 2);
+    }
+
+    private int segmentForMicros(double micros) {
+        int index = Arrays.binarySearch(segmentMicros, micros);
+        return index >= 0 ? index : Math.max(0, -index - 2);
+    }
+
+    /**
+     * Collects tempo changes in any order and turns them into sorted, deduplicated segments.
+     */
+    static final class Builder {
+        private final boolean ppq;
+        private final int resolution;
+        private final double framesPerSecond;
+        private long[] entries = new long[16];
+        private int size;
+
+        Builder(float divisionType, int resolution) {
+            this.ppq = divisionType == Sequence.PPQ;
+            this.resolution = resolution;
+            this.framesPerSecond = divisionType == Sequence.SMPTE_30DROP ? 29.97 : divisionType;
+        }
+
+        void addTempo(long tick, MetaMessage metaMessage) {
+            int microsPerQuarter = microsPerQuarter(metaMessage);
+            if (microsPerQuarter <= 0) {
+                return;
+            }
+            if (size == entries.length / 2) {
+                entries = Arrays.copyOf(entries, entries.length * 2);
+            }
+            entries[size * 2] = tick;
+            entries[size * 2 + 1] = microsPerQuarter;
+            size++;
+        }
+
+        TempoMap build() {
+            if (!ppq) {
+                // SMPTE timing: ticks have a fixed duration and tempo events do not apply; report the default tempo.
+                double micros = 1_000_000.0 / (framesPerSecond * resolution);
+                return new TempoMap(new long[]{0}, new double[]{0}, new double[]{micros}, DEFAULT_MICROS_PER_QUARTER / micros);
+            }
+
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            // Stable sort keeps the file order of tempo events sharing a tick, so the last one wins.
+            Arrays.sort(order, (a, b) -> Long.compare(entries[a * 2], entries[b * 2]));
+
+            long[] ticks = new long[size + 1];
+            double[] perTick = new double[size + 1];
+            ticks[0] = 0;
+            perTick[0] = (double) DEFAULT_MICROS_PER_QUARTER / resolution;
+            int count = 1;
+            for (Integer index : order) {
+                long tick = entries[index * 2];
+                double micros = (double) entries[index * 2 + 1] / resolution;
+                if (tick == ticks[count - 1]) {
+                    perTick[count - 1] = micros;
+                } else {
+                    ticks[count] = tick;
+                    perTick[count] = micros;
+                    count++;
+                }
+            }
+
+            double[] startMicros = new double[count];
+            for (int i = 1; i < count; i++) {
+                startMicros[i] = startMicros[i - 1] + (ticks[i] - ticks[i - 1]) * perTick[i - 1];
+            }
+            return new TempoMap(Arrays.copyOf(ticks, count), startMicros, Arrays.copyOf(perTick, count), resolution);
+        }
+    }
+}
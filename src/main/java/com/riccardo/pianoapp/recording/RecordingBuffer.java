@@ -0,0 +1,135 @@
+package com.riccardo.pianoapp.recording;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Preallocated ring buffer of recorded MIDI events.
+ * <p>
+ * Any number of input threads can {@link #offer} events without locking or allocating; a single consumer thread
+ * {@link #drain}s them. Each slot carries a sequence number telling whether it is free for the producer of a given
+ * position or ready for the consumer, so a producer only has to claim its position with one compare-and-set. When the
+ * buffer is full the event is dropped and counted rather than making the input thread wait.
+ */
+public class RecordingBuffer {
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final long[] timestamps;
+    private final int[] messages;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private long head;
+
+    /**
+     * Receives the events drained from the buffer.
+     */
+    @FunctionalInterface
+    public interface EventSink {
+        /**
+         * Called for each drained event, in the order the events were claimed.
+         *
+         * @param nanos   The capture time of the event, from {@link System#nanoTime()}.
+         * @param command The MIDI command and channel (status byte).
+         * @param data1   The first data byte.
+         * @param data2   The second data byte.
+         */
+        void accept(long nanos, int command, int data1, int data2);
+    }
+
+    public RecordingBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor for RecordingBuffer.
+     *
+     * @param capacity The number of slots; must be a power of two.
+     */
+    public RecordingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        this.timestamps = new long[capacity];
+        this.messages = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds an event to the buffer. Safe to call from any thread.
+     *
+     * @param nanos   The capture time of the event, from {@link System#nanoTime()}.
+     * @param command The MIDI command and channel (status byte).
+     * @param data1   The first data byte.
+     * @param data2   The second data byte.
+     * @return {@code true} if the event was stored, {@code false} if the buffer was full and the event was dropped.
+     */
+    public boolean offer(long nanos, int command, int data1, int data2) {
+        long position;
+        int slot;
+        while (true) {
+            position = tail.get();
+            slot = (int) position & mask;
+            long difference = sequences.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (difference < 0) {
+                dropped.incrementAndGet();
+                return false;
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+        timestamps[slot] = nanos;
+        messages[slot] = (command & 0xFF) | (data1 & 0xFF) << 8 | (data2 & 0xFF) << 16;
+        // Publishing the sequence makes the slot contents visible to the consumer.
+        sequences.set(slot, position + 1);
+        return true;
+    }
+
+    /**
+     * Hands every event published so far to the sink. Must only be called from one thread at a time.
+     *
+     * @param sink The receiver of the events.
+     * @return The number of events drained.
+     */
+    public int drain(EventSink sink) {
+        int count = 0;
+        while (true) {
+            int slot = (int) head & mask;
+            if (sequences.get(slot) != head + 1) {
+                return count;
+            }
+            long nanos = timestamps[slot];
+            int message = messages[slot];
+            sequences.set(slot, head + mask + 1);
+            head++;
+            count++;
+            sink.accept(nanos, message & 0xFF, (message >>> 8) & 0xFF, (message >>> 16) & 0xFF);
+        }
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Returns the number of events published but not drained yet.
+     *
+     * @return The approximate number of pending events.
+     */
+    public int getPending() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,70 @@
+package com.riccardo.pianoapp.recording;
+
+import javafx.concurrent.Task;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Closes the journal of a finished take and exports it as a MIDI file off the JavaFX thread.
+ * <p>
+ * The file is written to a temporary file in the target directory and then moved into place, atomically where the
+ * file system allows it, so the target never holds a partial recording. The journal is deleted only once the export
+ * has succeeded; if it fails, the journal is kept and recovered at the next start.
+ */
+public class RecordingExportTask extends Task<Path> {
+    private final RecordingJournal journal;
+    private final Path target;
+
+    /**
+     * Constructor for RecordingExportTask.
+     *
+     * @param journal The journal of the take; closed by the task.
+     * @param target  The MIDI file to write, or {@code null} to discard the take.
+     */
+    public RecordingExportTask(RecordingJournal journal, Path target) {
+        this.journal = journal;
+        this.target = target;
+    }
+
+    public Path getTarget() {
+        return target;
+    }
+
+    @Override
+    protected Path call() throws Exception {
+        journal.close();
+        if (target == null) {
+            Files.deleteIfExists(journal.getPath());
+            return null;
+        }
+        updateMessage("Saving " + target.getFileName());
+
+        Path directory = target.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, "." + target.getFileName(), ".tmp");
+        try {
+            RecordingJournal.writeMidiFile(journal.getPath(), temporary, (eventsDone, eventsTotal) -> {
+                if (isCancelled()) {
+                    throw new IllegalStateException("Export of " + target.getFileName() + " cancelled");
+                }
+                updateProgress(eventsDone, Math.max(1, eventsTotal));
+            });
+            moveIntoPlace(temporary);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.deleteIfExists(journal.getPath());
+        return target;
+    }
+
+    private void moveIntoPlace(Path temporary) throws IOException {
+        try {
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
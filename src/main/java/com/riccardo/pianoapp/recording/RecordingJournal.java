@@ -0,0 +1,343 @@
+package com.riccardo.pianoapp.recording;
+
+import com.riccardo.pianoapp.midi.TempoMap;
+
+import javax.sound.midi.ShortMessage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Append-only on-disk journal of a recording.
+ * <p>
+ * Each event is a fixed-size record (tick and packed MIDI message) written through a reusable buffer, and the file is
+ * forced to the storage device at regular intervals, so memory use does not grow with the length of the session and a
+ * crash loses at most the last interval. A journal is turned into a standard MIDI file with {@link #writeMidiFile};
+ * journals left behind by a crash are converted by {@link #recoverAll}. The journal is locked while it is written, so
+ * recovery never touches the take of a running recording, in this or in another instance of the application.
+ */
+public class RecordingJournal implements AutoCloseable {
+    public static final String EXTENSION = ".pmj";
+    public static final long SYNC_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final int MAGIC = 0x504D4A31; // "PMJ1"
+    private static final int HEADER_BYTES = 24;
+    private static final int RECORD_BYTES = 12;
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final String TRACK_NAME = "Piano Recording";
+
+    /**
+     * Receives the progress of a conversion into a MIDI file. Throwing from the callback aborts the conversion.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(long eventsDone, long eventsTotal);
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private long eventCount;
+    private long lastSyncNanos = System.nanoTime();
+    private boolean dirty;
+
+    private RecordingJournal(Path path, FileChannel channel) {
+        this.path = path;
+        this.channel = channel;
+    }
+
+    /**
+     * Takes the exclusive lock of a journal without waiting.
+     *
+     * @param channel A channel open for writing on the journal.
+     * @return The lock, or {@code null} if the journal is locked by a running recording.
+     * @throws IOException If the lock cannot be requested.
+     */
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;  // Locked by a recording of this instance
+        }
+    }
+
+    /**
+     * Creates a new journal in a directory.
+     *
+     * @param directory        The directory of the journal, created if needed.
+     * @param resolution       The resolution of the recording in ticks per quarter note.
+     * @param microsPerQuarter The tempo of the recording.
+     * @return The open journal.
+     * @throws IOException If the journal cannot be created.
+     */
+    public static RecordingJournal create(Path directory, int resolution, int microsPerQuarter) throws IOException {
+        Files.createDirectories(directory);
+        long startMillis = System.currentTimeMillis();
+        Path path = directory.resolve("take-" + startMillis + EXTENSION);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        // The lock is released when the channel is closed, or by the operating system after a crash.
+        if (tryLock(channel) == null) {
+            channel.close();
+            throw new IOException("Journal is locked: " + path);
+        }
+        RecordingJournal journal = new RecordingJournal(path, channel);
+        journal.buffer.putInt(MAGIC).putInt(resolution).putInt(microsPerQuarter).putInt(0).putLong(startMillis);
+        journal.flush();
+        channel.force(true);
+        return journal;
+    }
+
+    /**
+     * Appends an event. Events must be appended in tick order.
+     *
+     * @param tick    The tick of the event.
+     * @param command The MIDI command and channel (status byte).
+     * @param data1   The first data byte.
+     * @param data2   The second data byte.
+     * @throws UncheckedIOException If the buffer cannot be written to the file.
+     */
+    public void append(long tick, int command, int data1, int data2) {
+        if (buffer.remaining() < RECORD_BYTES) {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        buffer.putLong(tick).putInt((command & 0xFF) | (data1 & 0xFF) << 8 | (data2 & 0xFF) << 16);
+        eventCount++;
+        dirty = true;
+    }
+
+    /**
+     * Writes the buffered events and forces the file to storage if the sync interval has elapsed.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    public void syncIfDue() throws IOException {
+        long now = System.nanoTime();
+        if (dirty && now - lastSyncNanos >= SYNC_INTERVAL_NANOS) {
+            sync();
+            lastSyncNanos = now;
+        }
+    }
+
+    /**
+     * Writes the buffered events and forces the file to storage.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    public void sync() throws IOException {
+        flush();
+        channel.force(false);
+        dirty = false;
+    }
+
+    private void flush() throws IOException {
+        drainTo(buffer, channel);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Converts a journal into a format 0 standard MIDI file. The file is streamed, so memory use does not depend on the
+     * length of the recording. A truncated last record, as left by a crash, is ignored.
+     *
+     * @param journal The journal file.
+     * @param target  The MIDI file to write.
+     * @return The number of events written.
+     * @throws IOException If the journal cannot be read or is not a recording journal, or the target cannot be written.
+     */
+    public static long writeMidiFile(Path journal, Path target) throws IOException {
+        return writeMidiFile(journal, target, (eventsDone, eventsTotal) -> { });
+    }
+
+    /**
+     * Converts a journal into a format 0 standard MIDI file, reporting progress after each block of events.
+     *
+     * @param journal  The journal file.
+     * @param target   The MIDI file to write.
+     * @param listener The receiver of the progress.
+     * @return The number of events written.
+     * @throws IOException If the journal cannot be read or is not a recording journal, or the target cannot be written.
+     * @see #writeMidiFile(Path, Path)
+     */
+    public static long writeMidiFile(Path journal, Path target, ProgressListener listener) throws IOException {
+        try (FileChannel in = FileChannel.open(journal, StandardOpenOption.READ)) {
+            return writeMidiFile(in, journal, target, listener);
+        }
+    }
+
+    private static long writeMidiFile(FileChannel in, Path journal, Path target, ProgressListener listener) throws IOException {
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && in.read(header) >= 0) {
+                // Read the complete header.
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+                throw new IOException("Not a recording journal: " + journal);
+            }
+            int resolution = header.getInt();
+            int microsPerQuarter = header.getInt();
+            long eventsTotal = Math.max(0, (in.size() - HEADER_BYTES) / RECORD_BYTES);
+
+            ByteBuffer output = ByteBuffer.allocate(BUFFER_BYTES);
+            output.put("MThd".getBytes(StandardCharsets.US_ASCII)).putInt(6)
+                    .putShort((short) 0).putShort((short) 1).putShort((short) resolution);
+            output.put("MTrk".getBytes(StandardCharsets.US_ASCII));
+            long lengthPosition = output.position();
+            output.putInt(0);
+            long trackStart = output.position();
+
+            byte[] name = TRACK_NAME.getBytes(StandardCharsets.US_ASCII);
+            output.put((byte) 0).put((byte) 0xFF).put((byte) 0x03).put((byte) name.length).put(name);
+            output.put((byte) 0).put((byte) 0xFF).put((byte) TempoMap.TEMPO_META_TYPE).put((byte) 3)
+                    .put((byte) (microsPerQuarter >> 16)).put((byte) (microsPerQuarter >> 8)).put((byte) microsPerQuarter);
+
+            long trackBytes = output.position() - trackStart;
+            long previousTick = 0;
+            long events = 0;
+            ByteBuffer input = ByteBuffer.allocate(BUFFER_BYTES);
+            boolean valid = true;
+            while (valid && in.read(input) > 0) {
+                input.flip();
+                while (input.remaining() >= RECORD_BYTES) {
+                    long tick = input.getLong();
+                    int message = input.getInt();
+                    if ((message & 0x80) == 0) {
+                        // Zero-filled or torn tail after a crash: the journal ends here.
+                        valid = false;
+                        break;
+                    }
+                    if (output.remaining() < 16) {
+                        drainTo(output, out);
+                    }
+                    long delta = Math.max(0, tick - previousTick);
+                    previousTick += delta;
+                    int start = output.position();
+                    putVariableLength(output, delta);
+                    output.put((byte) message).put((byte) (message >>> 8));
+                    if (hasSecondDataByte(message)) {
+                        output.put((byte) (message >>> 16));
+                    }
+                    trackBytes += output.position() - start;
+                    events++;
+                }
+                input.compact();
+                listener.onProgress(events, eventsTotal);
+            }
+            output.put((byte) 0).put((byte) 0xFF).put((byte) 0x2F).put((byte) 0);
+            trackBytes += 4;
+            drainTo(output, out);
+            out.write(ByteBuffer.allocate(4).putInt(0, (int) trackBytes), lengthPosition);
+            out.force(false);
+            return events;
+        }
+    }
+
+    /**
+     * Tells whether a channel message has two data bytes; program change and channel pressure have only one.
+     */
+    private static boolean hasSecondDataByte(int status) {
+        int command = status & 0xF0;
+        return command != ShortMessage.PROGRAM_CHANGE && command != ShortMessage.CHANNEL_PRESSURE;
+    }
+
+    private static void drainTo(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static void putVariableLength(ByteBuffer buffer, long value) {
+        int shift = 63 - Long.numberOfLeadingZeros(value | 1);
+        for (int group = shift / 7; group > 0; group--) {
+            buffer.put((byte) (0x80 | (value >>> (group * 7)) & 0x7F));
+        }
+        buffer.put((byte) (value & 0x7F));
+    }
+
+    /**
+     * Converts the journals left in a directory by interrupted recordings into MIDI files next to them, then deletes
+     * the journals. Journals still locked by a running recording are skipped.
+     *
+     * @param directory The journal directory.
+     * @return The recovered MIDI files.
+     * @throws IOException If the directory cannot be listed.
+     */
+    public static List<Path> recoverAll(Path directory) throws IOException {
+        List<Path> recovered = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return recovered;
+        }
+        List<Path> journals;
+        try (Stream<Path> files = Files.list(directory)) {
+            journals = files.filter(file -> file.getFileName().toString().endsWith(EXTENSION)).sorted().toList();
+        }
+        for (Path journal : journals) {
+            String name = journal.getFileName().toString();
+            Path target = journal.resolveSibling("recovered-" + name.substring(0, name.length() - EXTENSION.length()) + ".mid");
+            try {
+                if (recover(journal, target)) {
+                    Files.delete(journal);
+                    recovered.add(target);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return recovered;
+    }
+
+    /**
+     * Converts a journal into a MIDI file while holding its lock. The journal is read through the locked channel: on
+     * some systems closing any other channel on the file would release the lock. A partly written MIDI file is deleted
+     * if the conversion fails.
+     *
+     * @return {@code false} if the journal is locked by a running recording.
+     */
+    private static boolean recover(Path journal, Path target) throws IOException {
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileLock lock = tryLock(channel)) {
+            if (lock == null) {
+                return false;
+            }
+            try {
+                writeMidiFile(channel, journal, target, (eventsDone, eventsTotal) -> { });
+            } catch (IOException e) {
+                Files.deleteIfExists(target);
+                throw e;
+            }
+            return true;
+        }
+    }
+}
@@ -6,36 +6,82 @@ import javafx.application.Platform;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
 import javafx.stage.FileChooser;
 import javafx.util.Duration;
 import javax.sound.midi.*;
 import java.io.File;
 import java.io.IOException;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
 
 /**
  * Manages recording of MIDI events.
+ * <p>
+ * Input handlers only write timestamped events into a {@link RecordingBuffer}; a background thread drains the buffer
+ * into a {@link RecordingJournal} on disk, so no work beyond the buffer write happens on the input path and memory
+ * use does not depend on the length of the take. The journal is converted into a MIDI file when recording stops, and
+ * journals of takes interrupted by a crash are recovered at the next start.
+ * <p>
+ * Events are timestamped with {@link System#nanoTime()} and converted to ticks at the session tempo, which is also
+ * written as the tempo of the recorded file. At the default resolution of {@value #DEFAULT_RESOLUTION} PPQ a tick is
+ * about half a millisecond at 120 BPM.
  */
 public class RecordingManager {
-    private boolean isRecording = false;
-    private Sequence recordingSequence;
-    private Track recordingTrack;
+    public static final int DEFAULT_RESOLUTION = 960;
+    public static final int DEFAULT_BPM = 120;
+    public static final Path DEFAULT_JOURNAL_DIRECTORY = Path.of(System.getProperty("user.home"), ".pianoapp", "journal");
+    private static final Logger LOGGER = Logger.getLogger(RecordingManager.class.getName());
+    private static final long DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private volatile boolean isRecording = false;
+    private final Path journalDirectory;
+    private RecordingJournal journal;
+    private volatile boolean journalFailed;
     private long recordingStartTime;
-    private final Map<Integer, Long> noteStartTimes = new ConcurrentHashMap<>();
+    private long recordingStartNanos;
+    private double ticksPerNano;
+    private int resolution = DEFAULT_RESOLUTION;
+    private final RecordingBuffer buffer = new RecordingBuffer();
+    private Thread drainThread;
     private final Label recordingTimeLabel;
     private final Button recordButton;
+    private final ProgressIndicator exportProgressIndicator;
+    private final ExecutorService exportExecutor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().daemon().name("recording-export").factory());
+    private int pendingExports;
     private final Timeline recordingTimeline = new Timeline();
 
     /**
      * Constructor for RecordingManager.
      *
-     * @param recordingTimeLabel The label to display recording time.
-     * @param recordButton       The button to start/stop recording.
+     * @param recordingTimeLabel      The label to display recording time.
+     * @param recordButton            The button to start/stop recording.
+     * @param exportProgressIndicator The indicator of the progress of saving a take.
+     */
+    public RecordingManager(Label recordingTimeLabel, Button recordButton, ProgressIndicator exportProgressIndicator) {
+        this(recordingTimeLabel, recordButton, exportProgressIndicator, DEFAULT_JOURNAL_DIRECTORY);
+    }
+
+    /**
+     * Constructor for RecordingManager.
+     *
+     * @param recordingTimeLabel      The label to display recording time.
+     * @param recordButton            The button to start/stop recording.
+     * @param exportProgressIndicator The indicator of the progress of saving a take.
+     * @param journalDirectory        The directory in which recording journals are kept.
      */
-    public RecordingManager(Label recordingTimeLabel, Button recordButton) {
+    public RecordingManager(Label recordingTimeLabel, Button recordButton, ProgressIndicator exportProgressIndicator, Path journalDirectory) {
         this.recordingTimeLabel = recordingTimeLabel;
         this.recordButton = recordButton;
+        this.exportProgressIndicator = exportProgressIndicator;
+        this.journalDirectory = journalDirectory;
     }
 
     public boolean isRecording() {
@@ -46,99 +92,230 @@ public class RecordingManager {
         return recordingStartTime;
     }
 
+    public int getResolution() {
+        return resolution;
+    }
+
     /**
-     * Starts recording MIDI events.
+     * Sets the resolution of the next recordings, e.g. 480 or 960.
+     *
+     * @param resolution The resolution in ticks per quarter note.
+     */
+    public void setResolution(int resolution) {
+        if (resolution <= 0 || resolution > 0x7FFF) {
+            throw new IllegalArgumentException("Resolution out of range: " + resolution);
+        }
+        this.resolution = resolution;
+    }
+
+    /**
+     * Starts recording MIDI events at the default tempo.
      */
     public void startRecording() {
+        startRecording(DEFAULT_BPM);
+    }
+
+    /**
+     * Starts recording MIDI events.
+     *
+     * @param bpm The session tempo, written to the recorded file and used to convert event times to ticks.
+     */
+    public void startRecording(int bpm) {
         try {
-            recordingSequence = new Sequence(Sequence.PPQ, 24);
-            recordingTrack = recordingSequence.createTrack();
-            recordingStartTime = System.currentTimeMillis();
+            int microsPerQuarter = 60_000_000 / bpm;
+            journal = RecordingJournal.create(journalDirectory, resolution, microsPerQuarter);
+            journalFailed = false;
+            ticksPerNano = (double) resolution / (microsPerQuarter * 1000.0);
 
-            MetaMessage metaMessage = new MetaMessage();
-            metaMessage.setMessage(0x03, "Piano Recording".getBytes(), "Piano Recording".length());
-            MidiEvent metaEvent = new MidiEvent(metaMessage, 0);
-            recordingTrack.add(metaEvent);
+            recordingStartTime = System.currentTimeMillis();
+            recordingStartNanos = System.nanoTime();
 
+            // Discard events that raced with the end of the previous take.
+            buffer.drain((nanos, command, data1, data2) -> { });
             isRecording = true;
+            drainThread = Thread.ofPlatform().daemon().name("recording-drain").start(this::drainLoop);
             recordButton.setText("Stop REC");
             startRecordingTimer();
-        } catch (InvalidMidiDataException e) {
+        } catch (IOException e) {
             e.printStackTrace();
+            showError("Failed to start recording.");
         }
     }
 
     /**
-     * Stops recording MIDI events and saves the recording to a file.
+     * Stops recording MIDI events and saves the recording to a file. The file is written in the background, so a new
+     * take can be started while the previous one is still being saved.
      */
     public void stopRecording() {
         isRecording = false;
+        stopDrainThread();
         recordButton.setText("REC");
         recordingTimeline.stop();
+        recordingTimeLabel.setText("00:00");
+        RecordingJournal finishedJournal = journal;
+        boolean incomplete = journalFailed;
+        journal = null;
 
         FileChooser fileChooser = new FileChooser();
         fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("MIDI files (*.mid, *.midi)", "*.mid", "*.midi"));
         fileChooser.setInitialFileName("recording.mid");
         File saveFile = fileChooser.showSaveDialog(null);
 
-        if (saveFile != null) {
-            try {
-                MidiSystem.write(recordingSequence, 1, saveFile);
+        export(new RecordingExportTask(finishedJournal, saveFile == null ? null : saveFile.toPath()), incomplete);
+    }
+
+    /**
+     * Queues a take on the background writer and shows its progress while it is written.
+     *
+     * @param task       The export of the take.
+     * @param incomplete Whether some events of the take could not be journaled.
+     */
+    private void export(RecordingExportTask task, boolean incomplete) {
+        pendingExports++;
+        task.setOnRunning(event -> {
+            exportProgressIndicator.progressProperty().bind(task.progressProperty());
+            exportProgressIndicator.setVisible(task.getTarget() != null);
+        });
+        task.setOnSucceeded(event -> {
+            exportFinished();
+            if (task.getTarget() == null) {
+                return;
+            }
+            if (incomplete) {
+                showError("Part of the recording could not be written and is missing from the saved file.");
+            } else {
                 showInformation();
-            } catch (IOException e) {
-                e.printStackTrace();
-                showError();
             }
+        });
+        task.setOnFailed(event -> {
+            exportFinished();
+            task.getException().printStackTrace();
+            showError("Failed to save recording. It will be recovered at the next start.");
+        });
+        exportExecutor.execute(task);
+    }
+
+    private void exportFinished() {
+        pendingExports--;
+        exportProgressIndicator.progressProperty().unbind();
+        if (pendingExports == 0) {
+            exportProgressIndicator.setVisible(false);
         }
+    }
 
-        recordingTimeLabel.setText("00:00");
+    /**
+     * Returns the number of takes waiting to be written or being written.
+     *
+     * @return The number of pending exports.
+     */
+    public int getPendingExports() {
+        return pendingExports;
     }
 
     /**
-     * Records a note-on event.
+     * Records a note-on event. Safe to call from any thread; the call never blocks.
      *
      * @param note The MIDI note value.
      */
     public void recordNoteOn(int note) {
-        if (recordingTrack == null) {
-            return;
+        if (isRecording) {
+            buffer.offer(System.nanoTime(), ShortMessage.NOTE_ON, note, 64);
         }
+    }
 
-        long tick = (System.currentTimeMillis() - recordingStartTime) / 10;
-        noteStartTimes.put(note, tick);
-
-        ShortMessage message = new ShortMessage();
-        try {
-            message.setMessage(ShortMessage.NOTE_ON, 0, note, 64);
-            MidiEvent event = new MidiEvent(message, tick);
-            recordingTrack.add(event);
-        } catch (InvalidMidiDataException e) {
-            e.printStackTrace();
+    /**
+     * Records a note-off event. Safe to call from any thread; the call never blocks.
+     *
+     * @param note The MIDI note value.
+     */
+    public void recordNoteOff(int note) {
+        if (isRecording) {
+            buffer.offer(System.nanoTime(), ShortMessage.NOTE_OFF, note, 64);
         }
     }
 
     /**
-     * Records a note-off event.
+     * Records an event captured elsewhere, e.g. by a MIDI input device. Safe to call from any thread; the call never
+     * blocks.
      *
-     * @param note     The MIDI note value.
-     * @param duration The duration of the note.
+     * @param nanos   The capture time of the event, from {@link System#nanoTime()}.
+     * @param command The MIDI command (status byte).
+     * @param data1   The first data byte.
+     * @param data2   The second data byte.
      */
-    public void recordNoteOff(int note, long duration) {
-        if (recordingTrack == null) {
-            return;
+    public void recordEvent(long nanos, int command, int data1, int data2) {
+        if (isRecording) {
+            buffer.offer(nanos, command, data1, data2);
         }
+    }
+
+    public RecordingBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Converts the journals of takes interrupted by a crash into MIDI files.
+     *
+     * @return The recovered MIDI files, next to the journals.
+     * @throws IOException If the journal directory cannot be read.
+     */
+    public List<Path> recoverJournals() throws IOException {
+        return RecordingJournal.recoverAll(journalDirectory);
+    }
 
-        long startTick = noteStartTimes.get(note);
-        long endTick = startTick + (duration / 10);
+    /**
+     * Moves buffered events into the journal until recording stops.
+     */
+    private void drainLoop() {
+        while (isRecording) {
+            drainToJournal();
+            try {
+                journal.syncIfDue();
+            } catch (IOException e) {
+                journalWriteFailed(e);
+            }
+            LockSupport.parkNanos(DRAIN_INTERVAL_NANOS);
+        }
+    }
 
-        ShortMessage message = new ShortMessage();
+    private void drainToJournal() {
         try {
-            message.setMessage(ShortMessage.NOTE_OFF, 0, note, 64);
-            MidiEvent event = new MidiEvent(message, endTick);
-            recordingTrack.add(event);
-        } catch (InvalidMidiDataException e) {
+            buffer.drain(this::writeEvent);
+        } catch (UncheckedIOException e) {
+            journalWriteFailed(e.getCause());
+        }
+    }
+
+    private void journalWriteFailed(IOException e) {
+        if (!journalFailed) {
             e.printStackTrace();
         }
+        journalFailed = true;
+    }
+
+    /**
+     * Stops the drain thread and writes the events still in the buffer.
+     */
+    private void stopDrainThread() {
+        if (drainThread == null) {
+            return;
+        }
+        LockSupport.unpark(drainThread);
+        try {
+            drainThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drainThread = null;
+        drainToJournal();
+        if (buffer.getDropped() > 0) {
+            LOGGER.warning("Recording buffer overflow, events dropped: " + buffer.getDropped());
+        }
+    }
+
+    private void writeEvent(long nanos, int command, int data1, int data2) {
+        long tick = Math.max(0, Math.round((nanos - recordingStartNanos) * ticksPerNano));
+        journal.append(tick, command, data1, data2);
     }
 
     /**
@@ -172,17 +349,19 @@ public class RecordingManager {
         alert.setTitle("Information");
         alert.setHeaderText(null);
         alert.setContentText("Recording saved successfully!");
-        alert.showAndWait();
+        alert.show();
     }
 
     /**
-     * Displays an error alert indicating that the recording failed to save.
+     * Displays an error alert about the recording.
+     *
+     * @param message The error message to be displayed.
      */
-    private void showError() {
+    private void showError(String message) {
         Alert alert = new Alert(Alert.AlertType.ERROR);
         alert.setTitle("Error");
         alert.setHeaderText(null);
-        alert.setContentText("Failed to save recording.");
-        alert.showAndWait();
+        alert.setContentText(message);
+        alert.show();
     }
 }
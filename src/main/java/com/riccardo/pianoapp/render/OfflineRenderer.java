@@ -0,0 +1,120 @@
+package com.riccardo.pianoapp.render;
+
+import com.riccardo.pianoapp.midi.SequenceAnalysis;
+import com.riccardo.pianoapp.midi.SequenceAnalyzer;
+import com.riccardo.pianoapp.midi.TempoMap;
+import com.riccardo.pianoapp.sound.SoundbankCache;
+import com.sun.media.sound.AudioSynthesizer;
+import com.sun.media.sound.SoftSynthesizer;
+
+import javax.sound.midi.*;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders a MIDI sequence to a WAV file as fast as the CPU allows.
+ * <p>
+ * The Gervill software synthesizer is opened in stream mode, where it does not play to a sound card but produces
+ * audio when it is read, and only the programs used by the sequence are loaded into it. Every event of the sequence is
+ * sent up front, timestamped with its time from the {@link TempoMap}, and the synthesizer output is written straight
+ * to the file. Each renderer owns its synthesizer, so several renderers can run in parallel.
+ * <p>
+ * The synthesizer is an internal JDK class, so the JVM must be started with
+ * {@code --add-exports java.desktop/com.sun.media.sound=com.riccardo.pianomidi} (or {@code =ALL-UNNAMED} on the class
+ * path).
+ */
+public class OfflineRenderer {
+    public static final AudioFormat DEFAULT_FORMAT = new AudioFormat(44_100f, 16, 2, true, false);
+    private static final long RELEASE_TAIL_MICROS = 2_000_000;
+
+    private final Soundbank soundbank;
+    private final AudioFormat format;
+
+    /**
+     * Constructor for OfflineRenderer.
+     *
+     * @param soundbank The soundbank whose instruments are used.
+     * @param format    The format of the rendered audio.
+     */
+    public OfflineRenderer(Soundbank soundbank, AudioFormat format) {
+        this.soundbank = soundbank;
+        this.format = format;
+    }
+
+    /**
+     * Renders a sequence to a WAV file, including a short tail for the release of the last notes.
+     *
+     * @param sequence The sequence to render.
+     * @param output   The WAV file to write.
+     * @return The render timing.
+     * @throws MidiUnavailableException If the synthesizer cannot be opened.
+     * @throws IOException              If the file cannot be written.
+     */
+    public RenderResult render(Sequence sequence, Path output) throws MidiUnavailableException, IOException {
+        long start = System.nanoTime();
+        SequenceAnalysis analysis = SequenceAnalyzer.analyze(sequence);
+        int[] programs = analysis.getPrograms();
+        // The default soundbank is slow to build; it is only needed for programs our soundbank does not have.
+        boolean needsDefaultSoundbank = !SoundbankCache.hasPrograms(soundbank, programs);
+        AudioSynthesizer synthesizer = new SoftSynthesizer();
+        AudioInputStream stream = synthesizer.openStream(format, Map.of("load default soundbank", needsDefaultSoundbank));
+        try {
+            SoundbankCache.loadPrograms(synthesizer, soundbank, programs);
+            TempoMap tempoMap = analysis.getTempoMap();
+            Receiver receiver = synthesizer.getReceiver();
+            for (MidiEvent event : sortedEvents(sequence)) {
+                receiver.send(event.getMessage(), (long) tempoMap.tickToMicros(event.getTick()));
+            }
+
+            long audioMicros = (long) tempoMap.tickToMicros(sequence.getTickLength()) + RELEASE_TAIL_MICROS;
+            long frames = (long) (audioMicros / 1e6 * format.getFrameRate());
+            try (AudioInputStream audio = new AudioInputStream(stream, format, frames)) {
+                AudioSystem.write(audio, AudioFileFormat.Type.WAVE, output.toFile());
+            }
+            return new RenderResult(output, audioMicros * 1000, System.nanoTime() - start);
+        } finally {
+            synthesizer.close();
+        }
+    }
+
+    /**
+     * Merges the playable events of all tracks in time order. Meta events are not sent to a synthesizer.
+     */
+    private static List<MidiEvent> sortedEvents(Sequence sequence) {
+        List<MidiEvent> events = new ArrayList<>();
+        for (Track track : sequence.getTracks()) {
+            for (int i = 0; i < track.size(); i++) {
+                MidiEvent event = track.get(i);
+                if (!(event.getMessage() instanceof MetaMessage)) {
+                    events.add(event);
+                }
+            }
+        }
+        // Stable sort: events of a track at the same tick keep their order.
+        events.sort(Comparator.comparingLong(MidiEvent::getTick));
+        return events;
+    }
+
+    /**
+     * Renders a MIDI file to WAV from the command line.
+     *
+     * @param args The input MIDI file and the output WAV file.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: OfflineRenderer <input.mid> <output.wav>");
+            System.exit(2);
+        }
+        OfflineRenderer renderer = new OfflineRenderer(SoundbankCache.getPianoSoundbank(), DEFAULT_FORMAT);
+        Sequence sequence = MidiSystem.getSequence(Path.of(args[0]).toFile());
+        System.out.println(renderer.render(sequence, Path.of(args[1])));
+    }
+}
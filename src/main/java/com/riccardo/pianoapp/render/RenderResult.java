@@ -0,0 +1,28 @@
+package com.riccardo.pianoapp.render;
+
+import java.nio.file.Path;
+
+/**
+ * Outcome of an offline render.
+ *
+ * @param output      The written audio file.
+ * @param audioNanos  The duration of the rendered audio.
+ * @param renderNanos The wall-clock time the render took.
+ */
+public record RenderResult(Path output, long audioNanos, long renderNanos) {
+
+    /**
+     * Returns how many times faster than real time the render ran.
+     *
+     * @return The ratio of audio duration to render time.
+     */
+    public double realTimeFactor() {
+        return (double) audioNanos / Math.max(1, renderNanos);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %.1f s of audio in %.2f s (%.1fx real time)",
+                output.getFileName(), audioNanos / 1e9, renderNanos / 1e9, realTimeFactor());
+    }
+}
@@ -0,0 +1,74 @@
+package com.riccardo.pianoapp.sound;
+
+import javafx.scene.control.Button;
+import java.util.Map;
+
+/**
+ * Highlights the keys of the on-screen keyboard for every source of notes, e.g. the notes played back and the notes
+ * played on MIDI input devices.
+ * <p>
+ * Highlights are reference-counted: each source adds and removes only its own, and a key gets its original style back
+ * when no source highlights it any more, so a source never clears the highlight of another. Must be used on the
+ * JavaFX thread.
+ */
+public class KeyHighlights {
+    public static final String HIGHLIGHT_STYLE = "-fx-background-color: #87CEEB;";
+
+    private final Map<Integer, Button> reverseNoteMap;
+    private final Map<Button, String> originalStyleMap;
+    private final int[] counts = new int[128];
+
+    /**
+     * Constructor for KeyHighlights.
+     *
+     * @param reverseNoteMap   The map of note values to buttons.
+     * @param originalStyleMap The map to keep track of the original key style for buttons.
+     */
+    public KeyHighlights(Map<Integer, Button> reverseNoteMap, Map<Button, String> originalStyleMap) {
+        this.reverseNoteMap = reverseNoteMap;
+        this.originalStyleMap = originalStyleMap;
+    }
+
+    /**
+     * Tells whether a note has a key on the keyboard, so sources can skip the work for notes out of its range.
+     *
+     * @param note The note value.
+     * @return {@code true} if the note has a key.
+     */
+    public boolean hasKey(int note) {
+        return reverseNoteMap.containsKey(note);
+    }
+
+    /**
+     * Adds a highlight of a source to a key.
+     *
+     * @param note The note value of the key.
+     */
+    public void add(int note) {
+        if (counts[note]++ == 0) {
+            setStyle(note, true);
+        }
+    }
+
+    /**
+     * Removes a highlight added by the same source. Removing more highlights than were added has no effect.
+     *
+     * @param note The note value of the key.
+     */
+    public void remove(int note) {
+        if (counts[note] > 0 && --counts[note] == 0) {
+            setStyle(note, false);
+        }
+    }
+
+    public boolean isHighlighted(int note) {
+        return counts[note] > 0;
+    }
+
+    private void setStyle(int note, boolean highlighted) {
+        Button button = reverseNoteMap.get(note);
+        if (button != null) {
+            button.setStyle(highlighted ? HIGHLIGHT_STYLE : originalStyleMap.get(button));
+        }
+    }
+}
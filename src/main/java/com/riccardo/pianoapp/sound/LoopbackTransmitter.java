@@ -0,0 +1,58 @@
+package com.riccardo.pianoapp.sound;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Transmitter;
+
+/**
+ * Software stand-in for the transmitter of a MIDI input device: messages passed to {@link #send} are delivered to the
+ * connected receiver on the calling thread, as a device driver would. Useful to drive the input path without hardware.
+ */
+public class LoopbackTransmitter implements Transmitter {
+    private volatile Receiver receiver;
+
+    @Override
+    public void setReceiver(Receiver receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public Receiver getReceiver() {
+        return receiver;
+    }
+
+    /**
+     * Delivers a message to the connected receiver, if any.
+     *
+     * @param message The message to deliver.
+     */
+    public void send(MidiMessage message) {
+        Receiver current = receiver;
+        if (current != null) {
+            current.send(message, -1);
+        }
+    }
+
+    public void noteOn(int note, int velocity) {
+        send(shortMessage(ShortMessage.NOTE_ON, note, velocity));
+    }
+
+    public void noteOff(int note) {
+        send(shortMessage(ShortMessage.NOTE_OFF, note, 0));
+    }
+
+    private static ShortMessage shortMessage(int command, int data1, int data2) {
+        try {
+            return new ShortMessage(command, 0, data1, data2);
+        } catch (InvalidMidiDataException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        receiver = null;
+    }
+}
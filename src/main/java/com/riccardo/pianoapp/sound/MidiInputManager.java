@@ -0,0 +1,213 @@
+package com.riccardo.pianoapp.sound;
+
+import com.riccardo.pianoapp.metrics.LatencyHistogram;
+import com.riccardo.pianoapp.metrics.LatencyMetrics;
+import com.riccardo.pianoapp.metrics.StartupTimeline;
+import com.riccardo.pianoapp.recording.RecordingBuffer;
+import com.riccardo.pianoapp.recording.RecordingManager;
+import javafx.application.Platform;
+import javax.sound.midi.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays and records the notes coming from MIDI input devices.
+ * <p>
+ * Device transmitters are connected to a {@link Receiver} that only timestamps incoming messages and hands them to a
+ * dedicated high-priority thread through a lock-free buffer. That thread sends the notes straight to the synthesizer
+ * and to the recording, without going through the JavaFX thread. Key highlighting is coalesced and applied on the
+ * JavaFX thread at most once per pulse, through the {@link KeyHighlights} shared with playback.
+ */
+public class MidiInputManager implements AutoCloseable {
+    private final MidiChannel channel;
+    private final RecordingManager recordingManager;
+    private final KeyHighlights keyHighlights;
+    private final RecordingBuffer inbox = new RecordingBuffer(1024);
+    private final Receiver receiver = new InputReceiver();
+    private final List<MidiDevice> openDevices = new CopyOnWriteArrayList<>();
+    private final List<Transmitter> transmitters = new CopyOnWriteArrayList<>();
+    private final AtomicIntegerArray heldKeys = new AtomicIntegerArray(128);
+    private final boolean[] highlightedKeys = new boolean[128];
+    private final AtomicBoolean highlightPending = new AtomicBoolean();
+    private final LatencyHistogram inputLatency = LatencyMetrics.getInstance().getInputToNoteOn();
+    private final StartupTimeline startupTimeline = StartupTimeline.getInstance();
+    private final Thread dispatchThread;
+    private volatile boolean running = true;
+
+    /**
+     * Constructor for MidiInputManager. The dispatch thread is started immediately.
+     *
+     * @param channel          The synthesizer channel that plays the input notes.
+     * @param recordingManager The recording manager that records the input notes.
+     * @param keyHighlights    The highlights of the keyboard keys.
+     */
+    public MidiInputManager(MidiChannel channel, RecordingManager recordingManager, KeyHighlights keyHighlights) {
+        this.channel = channel;
+        this.recordingManager = recordingManager;
+        this.keyHighlights = keyHighlights;
+        this.dispatchThread = Thread.ofPlatform().daemon().name("midi-input").unstarted(this::dispatchLoop);
+        dispatchThread.setPriority(Thread.MAX_PRIORITY);
+        dispatchThread.start();
+    }
+
+    /**
+     * Opens every MIDI device that can transmit, apart from sequencers and synthesizers, and connects it.
+     *
+     * @return The names of the devices that were opened.
+     */
+    public List<String> openInputDevices() {
+        List<String> names = new ArrayList<>();
+        for (MidiDevice.Info info : MidiSystem.getMidiDeviceInfo()) {
+            try {
+                MidiDevice device = MidiSystem.getMidiDevice(info);
+                if (device instanceof Sequencer || device instanceof Synthesizer || device.getMaxTransmitters() == 0) {
+                    continue;
+                }
+                device.open();
+                openDevices.add(device);
+                connect(device.getTransmitter());
+                names.add(info.getName());
+            } catch (MidiUnavailableException e) {
+                e.printStackTrace();
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Connects a transmitter, e.g. of a device opened elsewhere or a {@link LoopbackTransmitter}, to the input path.
+     *
+     * @param transmitter The transmitter to connect.
+     */
+    public void connect(Transmitter transmitter) {
+        transmitter.setReceiver(receiver);
+        transmitters.add(transmitter);
+    }
+
+    public Receiver getReceiver() {
+        return receiver;
+    }
+
+    public long getDroppedEvents() {
+        return inbox.getDropped();
+    }
+
+    /**
+     * Tells whether a key is held on an input device, which is what its highlight shows.
+     *
+     * @param note The note value.
+     * @return {@code true} if more note ons than note offs were dispatched for the key.
+     */
+    boolean isKeyHeld(int note) {
+        return heldKeys.get(note) > 0;
+    }
+
+    /**
+     * Timestamps incoming messages and wakes the dispatch thread. Runs on the threads of the device drivers.
+     */
+    private final class InputReceiver implements Receiver {
+        @Override
+        public void send(MidiMessage message, long timeStamp) {
+            if (message instanceof ShortMessage sm && inbox.offer(System.nanoTime(), sm.getCommand(), sm.getData1(), sm.getData2())) {
+                LockSupport.unpark(dispatchThread);
+            }
+        }
+
+        @Override
+        public void close() {
+            // Shared by all transmitters; closed with the manager.
+        }
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            if (inbox.drain(this::dispatch) == 0) {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    private void dispatch(long nanos, int command, int data1, int data2) {
+        switch (command) {
+            case ShortMessage.NOTE_ON -> {
+                if (data2 > 0) {
+                    channel.noteOn(data1, data2);
+                    inputLatency.record(System.nanoTime() - nanos);
+                    startupTimeline.firstNote();
+                    recordingManager.recordEvent(nanos, ShortMessage.NOTE_ON, data1, data2);
+                    heldKeys.incrementAndGet(data1);
+                    requestHighlight(data1);
+                } else {
+                    releaseKey(nanos, data1);
+                }
+            }
+            case ShortMessage.NOTE_OFF -> releaseKey(nanos, data1);
+            case ShortMessage.CONTROL_CHANGE -> {
+                channel.controlChange(data1, data2);
+                recordingManager.recordEvent(nanos, ShortMessage.CONTROL_CHANGE, data1, data2);
+            }
+            case ShortMessage.PITCH_BEND -> channel.setPitchBend(data1 | data2 << 7);
+            default -> {
+                // Other messages are not played.
+            }
+        }
+    }
+
+    private void releaseKey(long nanos, int note) {
+        channel.noteOff(note);
+        recordingManager.recordEvent(nanos, ShortMessage.NOTE_OFF, note, 64);
+        heldKeys.getAndUpdate(note, held -> Math.max(0, held - 1));
+        requestHighlight(note);
+    }
+
+    /**
+     * Schedules a refresh of the key styles unless one is already pending.
+     */
+    private void requestHighlight(int note) {
+        if (keyHighlights.hasKey(note) && highlightPending.compareAndSet(false, true)) {
+            Platform.runLater(this::applyHighlight);
+        }
+    }
+
+    private void applyHighlight() {
+        highlightPending.set(false);
+        for (int note = 0; note < highlightedKeys.length; note++) {
+            boolean held = heldKeys.get(note) > 0;
+            if (held != highlightedKeys[note]) {
+                highlightedKeys[note] = held;
+                if (held) {
+                    keyHighlights.add(note);
+                } else {
+                    keyHighlights.remove(note);
+                }
+            }
+        }
+    }
+
+    /**
+     * Disconnects the transmitters, closes the opened devices and stops the dispatch thread, waiting for it to finish
+     * the messages it is dispatching.
+     */
+    @Override
+    public void close() {
+        for (Transmitter transmitter : transmitters) {
+            transmitter.close();
+        }
+        transmitters.clear();
+        for (MidiDevice device : openDevices) {
+            device.close();
+        }
+        openDevices.clear();
+        running = false;
+        LockSupport.unpark(dispatchThread);
+        try {
+            dispatchThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
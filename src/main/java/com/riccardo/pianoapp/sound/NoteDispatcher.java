@@ -0,0 +1,526 @@
+package com.riccardo.pianoapp.sound;
+
+import com.riccardo.pianoapp.metrics.LatencyHistogram;
+import com.riccardo.pianoapp.metrics.LatencyMetrics;
+import com.riccardo.pianoapp.metrics.StartupTimeline;
+import com.riccardo.pianoapp.midi.ChannelEvents;
+import com.riccardo.pianoapp.midi.NoteSchedule;
+import com.riccardo.pianoapp.midi.PlaybackClock;
+import javax.sound.midi.MidiChannel;
+import javax.sound.midi.ShortMessage;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays the notes of a {@link NoteSchedule} at the times given by the master {@link PlaybackClock}.
+ * <p>
+ * Notes are sent to the synthesizer from a dedicated high-priority thread instead of the JavaFX pulse, so their timing
+ * does not depend on the frame rate, layout or pauses of the JavaFX thread. The thread parks until shortly before the
+ * next note-on or note-off and spins for the rest of the wait. The lateness of every note-on is recorded in
+ * {@link LatencyMetrics#getTriggerLateness()}.
+ * <p>
+ * Every note and {@link ChannelEvents channel event} is sent to the synthesizer channel it was written for, so
+ * multi-track files keep their instruments. When playback starts in the middle of a sequence, the last program,
+ * controller values and pitch bend of each channel are restored first; when it stops, the channels it changed are
+ * reset. The notes that started before the start position and are still held at that time are played again, so
+ * playback can start anywhere. The number of notes sounding at the same time is bounded by a {@link VoiceManager}.
+ * <p>
+ * A schedule can also be played in a loop, e.g. a {@link com.riccardo.pianoapp.midi.LoopRegion} sliced from the
+ * sequence: once its last note and event have been sent, the same schedule is played again shifted by the length of
+ * the loop, while the clock keeps running, so there is no gap at the loop point. Sounding notes keep the end time they
+ * were played with, so the notes crossing the end of the loop are released there.
+ * <p>
+ * The keys being played are published through a lock-free array, which the render loop reads to highlight the
+ * keyboard. Playback is controlled from any thread with {@link #start}, {@link #pause}, {@link #resume}, {@link #stop}
+ * and {@link #wake}; the schedule and the synthesizer channels are only touched by the dispatch thread. Commands are
+ * handed over through a single slot without locking, so the caller never waits for the synthesizer. A command is
+ * numbered before it moves the clock, and the dispatch thread sends nothing while a newer command is pending, so no
+ * event of the previous schedule is sent against the new position.
+ */
+public class NoteDispatcher implements AutoCloseable {
+    public static final long DEFAULT_SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(250);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final int[] NO_NOTES = new int[0];
+
+    /**
+     * A request to the dispatch thread: play {@code schedule} from {@code startTick}, over and over every
+     * {@code loopMicros} if positive, or stop if the schedule is null.
+     */
+    private record Command(NoteSchedule schedule, long startTick, double loopMicros, long generation) {
+    }
+
+    // Silences the sounding notes; replaced by any other command, which releases them anyway.
+    private static final Command PAUSE = new Command(null, 0, 0, -1);
+
+    private final PlaybackClock clock;
+    private final long spinNanos;
+    private final AtomicReference<Command> pending = new AtomicReference<>();
+    private final AtomicIntegerArray soundingKeys = new AtomicIntegerArray(128);
+    private final VoiceManager voices;
+    private final LatencyHistogram triggerLateness = LatencyMetrics.getInstance().getTriggerLateness();
+    private final StartupTimeline startupTimeline = StartupTimeline.getInstance();
+    private final Thread dispatchThread;
+    private volatile MidiChannel[] channels;
+    private volatile boolean running = true;
+    private final AtomicLong requestedGeneration = new AtomicLong();
+    private volatile long completedGeneration;
+    private volatile long triggeredNotes;
+    private volatile long maxLatenessNanos;
+
+    // Owned by the dispatch thread
+    private NoteSchedule schedule;
+    private ChannelEvents events;
+    private long generation;
+    private int nextNote;
+    private int nextEvent;
+    private int changedChannels;
+    private double loopMicros;
+    private double offsetMicros;
+    private int[] heldNotes = NO_NOTES;
+    private double[] heldEnds = new double[0];
+    private double chaseMicros;
+    private final int[] chaseBuffer = new int[ChannelEvents.CHASE_BUFFER_SIZE];
+    private int[] soundingNotes = new int[64];
+    private double[] soundingEnds = new double[64];
+    private int soundingCount;
+
+    /**
+     * Constructor for NoteDispatcher. The dispatch thread is started immediately.
+     *
+     * @param clock The master playback clock.
+     */
+    public NoteDispatcher(PlaybackClock clock) {
+        this(clock, DEFAULT_SPIN_NANOS, VoiceManager.fromSystemProperties());
+    }
+
+    /**
+     * Constructor for NoteDispatcher. The dispatch thread is started immediately.
+     *
+     * @param clock     The master playback clock.
+     * @param spinNanos How long before an event the thread stops parking and spins.
+     * @param voices    The voice manager that bounds the notes sounding at the same time.
+     */
+    public NoteDispatcher(PlaybackClock clock, long spinNanos, VoiceManager voices) {
+        this.clock = clock;
+        this.spinNanos = spinNanos;
+        this.voices = voices;
+        this.dispatchThread = Thread.ofPlatform().daemon().name("note-dispatch").unstarted(this::dispatchLoop);
+        dispatchThread.setPriority(Thread.MAX_PRIORITY);
+        dispatchThread.start();
+    }
+
+    /**
+     * Sets the synthesizer channels the notes are played on, indexed by MIDI channel. Notes are not played until the
+     * channels are set.
+     *
+     * @param channels The channels of the synthesizer.
+     */
+    public void setChannels(MidiChannel[] channels) {
+        this.channels = channels;
+    }
+
+    /**
+     * Starts playing a schedule. The notes sounding from a previous start are released first.
+     *
+     * @param schedule  The schedule to play.
+     * @param startTick The tick to start from.
+     */
+    public void start(NoteSchedule schedule, long startTick) {
+        send(new Command(schedule, startTick, 0, requestedGeneration.incrementAndGet()));
+    }
+
+    /**
+     * Moves the clock and starts playing a schedule from a tick in a single step, e.g. to seek. The clock keeps its
+     * running state.
+     *
+     * @param schedule    The schedule to play.
+     * @param startTick   The tick to start from.
+     * @param clockMicros The new position of the clock, at or before the time of {@code startTick}.
+     */
+    public void start(NoteSchedule schedule, long startTick, double clockMicros) {
+        start(schedule, startTick, clockMicros, 0);
+    }
+
+    /**
+     * Moves the clock and starts playing a schedule in a loop. When every note and event of the schedule has been
+     * sent, it is played again {@code loopMicros} later, until playback is stopped or started again.
+     *
+     * @param schedule    The schedule to play, e.g. a slice of the sequence as long as the loop.
+     * @param startTick   The tick to start from.
+     * @param clockMicros The new position of the clock, at or before the time of {@code startTick}.
+     * @param loopMicros  The length of the loop in microseconds, or 0 to play the schedule once.
+     */
+    public void start(NoteSchedule schedule, long startTick, double clockMicros, double loopMicros) {
+        // Numbered first: the dispatch thread stops sending as soon as it can see the moved clock.
+        long commandGeneration = requestedGeneration.incrementAndGet();
+        clock.seek(clockMicros);
+        send(new Command(schedule, startTick, loopMicros, commandGeneration));
+    }
+
+    /**
+     * Freezes the clock and silences the sounding notes. The notes are played again from the same position on
+     * {@link #resume()}, without looking up the schedule again.
+     */
+    public void pause() {
+        clock.pause();
+        // A pending start or stop releases the sounding notes anyway.
+        if (pending.compareAndSet(null, PAUSE)) {
+            LockSupport.unpark(dispatchThread);
+        }
+    }
+
+    /**
+     * Restarts the clock from the position at which it was paused.
+     */
+    public void resume() {
+        // A pause not yet seen by the dispatch thread does not need to silence anything.
+        pending.compareAndSet(PAUSE, null);
+        clock.resume();
+        LockSupport.unpark(dispatchThread);
+    }
+
+    /**
+     * Stops playing and releases the sounding notes.
+     */
+    public void stop() {
+        send(new Command(null, 0, 0, requestedGeneration.incrementAndGet()));
+    }
+
+    /**
+     * Wakes the dispatch thread after the clock was resumed, moved or changed rate, so the next note is rescheduled
+     * at once.
+     */
+    public void wake() {
+        LockSupport.unpark(dispatchThread);
+    }
+
+    /**
+     * Returns whether the last schedule started still has notes to play or release.
+     *
+     * @return {@code true} until every note of the schedule has been released or playback is stopped.
+     */
+    public boolean isPlaying() {
+        return completedGeneration != requestedGeneration.get();
+    }
+
+    /**
+     * Returns whether a key is being played by the dispatcher.
+     *
+     * @param key The MIDI note value.
+     * @return {@code true} if at least one note with this key is sounding.
+     */
+    public boolean isKeySounding(int key) {
+        return soundingKeys.get(key) > 0;
+    }
+
+    public VoiceManager getVoiceManager() {
+        return voices;
+    }
+
+    public long getTriggeredNotes() {
+        return triggeredNotes;
+    }
+
+    /**
+     * Returns how late, at most, a note has been played compared with its time on the master clock since the last
+     * start.
+     *
+     * @return The maximum trigger lateness in nanoseconds.
+     */
+    public long getMaxLatenessNanos() {
+        return maxLatenessNanos;
+    }
+
+    /**
+     * Stops the dispatch thread and releases the sounding notes.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(dispatchThread);
+        try {
+            dispatchThread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void send(Command command) {
+        pending.set(command);
+        LockSupport.unpark(dispatchThread);
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            long remaining = step();
+            if (remaining == Long.MAX_VALUE) {
+                LockSupport.park(this);
+            } else if (remaining > spinNanos) {
+                LockSupport.parkNanos(this, Math.min(remaining - spinNanos, MAX_PARK_NANOS));
+            } else if (remaining > 0) {
+                Thread.onSpinWait();
+            }
+        }
+        releaseAll();
+        resetChangedChannels();
+    }
+
+    /**
+     * Applies the pending command and sends the due events.
+     *
+     * @return The time until the next event in nanoseconds, 0 if events were sent, or {@link Long#MAX_VALUE} if there
+     * is nothing to play.
+     */
+    private long step() {
+        Command command = pending.getAndSet(null);
+        if (command == PAUSE) {
+            applyPause();
+        } else if (command != null) {
+            apply(command);
+        }
+        if (schedule == null) {
+            return Long.MAX_VALUE;
+        }
+        long target = clock.toNanoTime(nextEventMicros());
+        if (target == Long.MAX_VALUE) {
+            // The clock is paused: poll for the resume.
+            return spinNanos + MAX_PARK_NANOS;
+        }
+        long remaining = target - System.nanoTime();
+        if (remaining > 0) {
+            return remaining;
+        }
+        dispatchDueEvents();
+        return 0;
+    }
+
+    private void apply(Command command) {
+        releaseAll();
+        resetChangedChannels();
+        schedule = command.schedule();
+        generation = command.generation();
+        if (schedule == null || channels == null) {
+            schedule = null;
+            completedGeneration = generation;
+            return;
+        }
+        events = schedule.getChannelEvents();
+        // An empty loop would wrap forever without sending anything.
+        loopMicros = schedule.isEmpty() && events.size() == 0 ? 0 : command.loopMicros();
+        offsetMicros = 0;
+        nextNote = schedule.firstIndexAtOrAfter(command.startTick());
+        nextEvent = events.firstIndexAtOrAfter(command.startTick());
+        chaseChannelEvents(nextEvent);
+        heldNotes = schedule.getHeldNotes(command.startTick());
+        heldEnds = new double[heldNotes.length];
+        for (int i = 0; i < heldNotes.length; i++) {
+            heldEnds[i] = schedule.getEndMicros(heldNotes[i]);
+        }
+        chaseMicros = schedule.getTempoMap().tickToMicros(command.startTick());
+        triggeredNotes = 0;
+        maxLatenessNanos = 0;
+        wrapLoop();
+        finishIfDone();
+    }
+
+    /**
+     * Releases the sounding notes and chases them at the paused position, so they sound again on resume with the same
+     * end time. Nothing is sounding while a chase is pending, so the sounding notes are the whole held set.
+     */
+    private void applyPause() {
+        if (schedule != null && soundingCount > 0) {
+            heldNotes = Arrays.copyOf(soundingNotes, soundingCount);
+            heldEnds = Arrays.copyOf(soundingEnds, soundingCount);
+            chaseMicros = clock.getPositionMicros();
+            releaseAll();
+        }
+    }
+
+    /**
+     * Returns the time of the next note-on, note-off or channel event, whichever comes first.
+     */
+    private double nextEventMicros() {
+        double next = nextNote < schedule.size() ? schedule.getStartMicros(nextNote) + offsetMicros : Double.MAX_VALUE;
+        if (nextEvent < events.size()) {
+            next = Math.min(next, events.getMicros(nextEvent) + offsetMicros);
+        }
+        if (heldNotes.length > 0) {
+            next = Math.min(next, chaseMicros);
+        }
+        for (int i = 0; i < soundingCount; i++) {
+            next = Math.min(next, soundingEnds[i]);
+        }
+        return next;
+    }
+
+    /**
+     * Releases and plays every note whose time has been reached. Releases come first, so a key that is struck again
+     * right after it ends sounds again; a channel event comes before the notes at the same time, so a program change
+     * applies to them.
+     */
+    private void dispatchDueEvents() {
+        double positionMicros = clock.getPositionMicros();
+        // Read after the position: if the clock was moved for a newer command, that command is seen as pending.
+        if (requestedGeneration.get() != generation) {
+            return;
+        }
+        for (int i = soundingCount - 1; i >= 0; i--) {
+            if (soundingEnds[i] <= positionMicros) {
+                noteOff(soundingNotes[i]);
+                removeSoundingAt(i);
+            }
+        }
+        if (heldNotes.length > 0 && chaseMicros <= positionMicros) {
+            chaseHeldNotes();
+        }
+        while (true) {
+            wrapLoop();
+            double noteMicros = nextNote < schedule.size() ? schedule.getStartMicros(nextNote) + offsetMicros : Double.MAX_VALUE;
+            double eventMicros = nextEvent < events.size() ? events.getMicros(nextEvent) + offsetMicros : Double.MAX_VALUE;
+            if (eventMicros <= positionMicros && eventMicros <= noteMicros) {
+                sendChannelEvent(nextEvent++);
+            } else if (noteMicros <= positionMicros) {
+                noteOn(nextNote++);
+            } else {
+                break;
+            }
+        }
+        finishIfDone();
+    }
+
+    /**
+     * Plays again the notes that started before the start tick and are still held at that time.
+     */
+    private void chaseHeldNotes() {
+        for (int i = 0; i < heldNotes.length; i++) {
+            playNote(heldNotes[i], heldEnds[i]);
+        }
+        heldNotes = NO_NOTES;
+    }
+
+    /**
+     * Starts the next repetition of the loop once every note and event of the current one has been sent. The notes of
+     * the current repetition that are still sounding keep their end time.
+     */
+    private void wrapLoop() {
+        if (loopMicros > 0 && nextNote >= schedule.size() && nextEvent >= events.size()) {
+            offsetMicros += loopMicros;
+            nextNote = 0;
+            nextEvent = 0;
+        }
+    }
+
+    private void noteOn(int index) {
+        playNote(index, schedule.getEndMicros(index) + offsetMicros);
+        long lateness = System.nanoTime() - clock.toNanoTime(schedule.getStartMicros(index) + offsetMicros);
+        triggerLateness.record(lateness);
+        startupTimeline.firstNote();
+        maxLatenessNanos = Math.max(maxLatenessNanos, lateness);
+        triggeredNotes++;
+    }
+
+    private void playNote(int index, double endMicros) {
+        int stolen = voices.allocate(index, schedule.getVelocity(index));
+        if (stolen >= 0) {
+            sendNoteOff(stolen);
+            removeSoundingNote(stolen);
+        }
+        int key = schedule.getKey(index);
+        channels[schedule.getChannel(index)].noteOn(key, schedule.getVelocity(index));
+        soundingKeys.incrementAndGet(key);
+        if (soundingCount == soundingNotes.length) {
+            soundingNotes = Arrays.copyOf(soundingNotes, soundingCount * 2);
+            soundingEnds = Arrays.copyOf(soundingEnds, soundingCount * 2);
+        }
+        soundingNotes[soundingCount] = index;
+        soundingEnds[soundingCount] = endMicros;
+        soundingCount++;
+    }
+
+    private void noteOff(int index) {
+        voices.release(index);
+        sendNoteOff(index);
+    }
+
+    private void sendNoteOff(int index) {
+        int key = schedule.getKey(index);
+        channels[schedule.getChannel(index)].noteOff(key);
+        soundingKeys.decrementAndGet(key);
+    }
+
+    private void removeSoundingNote(int index) {
+        for (int i = 0; i < soundingCount; i++) {
+            if (soundingNotes[i] == index) {
+                removeSoundingAt(i);
+                return;
+            }
+        }
+    }
+
+    private void removeSoundingAt(int i) {
+        soundingCount--;
+        soundingNotes[i] = soundingNotes[soundingCount];
+        soundingEnds[i] = soundingEnds[soundingCount];
+    }
+
+    private void releaseAll() {
+        for (int i = 0; i < soundingCount; i++) {
+            sendNoteOff(soundingNotes[i]);
+        }
+        soundingCount = 0;
+        voices.clear();
+    }
+
+    private void sendChannelEvent(int index) {
+        int channelNumber = events.getChannel(index);
+        MidiChannel target = channels[channelNumber];
+        switch (events.getCommand(index)) {
+            case ShortMessage.PROGRAM_CHANGE -> target.programChange(events.getData1(index));
+            case ShortMessage.CONTROL_CHANGE -> target.controlChange(events.getData1(index), events.getData2(index));
+            case ShortMessage.PITCH_BEND -> target.setPitchBend(events.getData1(index) | (events.getData2(index) << 7));
+            default -> {
+                return;
+            }
+        }
+        changedChannels |= 1 << channelNumber;
+    }
+
+    /**
+     * Sends the last program, controller values and pitch bend set on each channel before the given event, so playback
+     * started in the middle of a sequence sounds as if it had been played from the start.
+     *
+     * @param endIndex The index of the first event not to chase.
+     * @see ChannelEvents#getChaseEvents(int, int[])
+     */
+    private void chaseChannelEvents(int endIndex) {
+        int count = events.getChaseEvents(endIndex, chaseBuffer);
+        for (int i = 0; i < count; i++) {
+            sendChannelEvent(chaseBuffer[i]);
+        }
+    }
+
+    /**
+     * Resets the controllers and the program of the channels changed by the previous playback, so the keyboard and
+     * the next playback start from the default piano.
+     */
+    private void resetChangedChannels() {
+        for (int channelNumber = 0; channelNumber < 16; channelNumber++) {
+            if ((changedChannels & (1 << channelNumber)) != 0) {
+                channels[channelNumber].resetAllControllers();
+                channels[channelNumber].programChange(0, 0);
+            }
+        }
+        changedChannels = 0;
+    }
+
+    private void finishIfDone() {
+        if (nextNote >= schedule.size() && nextEvent >= events.size() && heldNotes.length == 0 && soundingCount == 0) {
+            schedule = null;
+            completedGeneration = generation;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.riccardo.pianoapp.sound;
+
+import javax.sound.midi.*;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loads soundbanks from the classpath once and keeps them for reuse.
+ * <p>
+ * The first time a soundbank resource is requested from inside a jar it is copied to a cache directory. From then on,
+ * including in later sessions, it is parsed from that file: the synthesizer then reads the sample data from the file
+ * when instruments are loaded instead of copying the whole soundbank into memory. Parsed soundbanks are kept for the
+ * lifetime of the process.
+ * <p>
+ * The copy is used only if its size, and the size and modification time of the resource recorded in a stamp file next
+ * to it, still match the resource. If the cache directory cannot be written or the copy cannot be parsed, the copy is
+ * deleted and the soundbank is parsed from the classpath stream.
+ */
+public final class SoundbankCache {
+    public static final String PIANO_SOUNDBANK = "/com/riccardo/pianoapp/sound/yamaha_grand_piano.sf2";
+    public static final Path DEFAULT_CACHE_DIRECTORY = Path.of(System.getProperty("user.home"), ".pianoapp", "cache");
+
+    private static final Logger LOGGER = Logger.getLogger(SoundbankCache.class.getName());
+    private static final String STAMP_SUFFIX = ".stamp";
+    private static final Map<String, Soundbank> LOADED = new ConcurrentHashMap<>();
+
+    private SoundbankCache() {
+    }
+
+    public static Soundbank getPianoSoundbank() throws IOException, InvalidMidiDataException {
+        return get(PIANO_SOUNDBANK);
+    }
+
+    /**
+     * Returns a parsed soundbank, loading it on the first request.
+     *
+     * @param resource The classpath resource of the soundbank.
+     * @return The soundbank.
+     * @throws IOException              If the resource cannot be found or read.
+     * @throws InvalidMidiDataException If the resource is not a valid soundbank.
+     */
+    public static Soundbank get(String resource) throws IOException, InvalidMidiDataException {
+        Soundbank soundbank = LOADED.get(resource);
+        if (soundbank != null) {
+            return soundbank;
+        }
+        synchronized (LOADED) {
+            soundbank = LOADED.get(resource);
+            if (soundbank == null) {
+                soundbank = load(resource);
+                LOADED.put(resource, soundbank);
+            }
+            return soundbank;
+        }
+    }
+
+    public static boolean isLoaded(String resource) {
+        return LOADED.containsKey(resource);
+    }
+
+    private static Soundbank load(String resource) throws IOException, InvalidMidiDataException {
+        URL url = SoundbankCache.class.getResource(resource);
+        if (url == null) {
+            throw new IOException("Soundbank not found: " + resource);
+        }
+        if ("file".equals(url.getProtocol())) {
+            try {
+                return MidiSystem.getSoundbank(Path.of(url.toURI()).toFile());
+            } catch (URISyntaxException e) {
+                throw new IOException(e);
+            }
+        }
+        Path cached = DEFAULT_CACHE_DIRECTORY.resolve(resource.substring(resource.lastIndexOf('/') + 1));
+        try {
+            extract(url, cached);
+            return MidiSystem.getSoundbank(cached.toFile());
+        } catch (IOException | InvalidMidiDataException e) {
+            LOGGER.log(Level.WARNING, "Cached soundbank " + cached + " is unusable, reading " + resource + " from the classpath", e);
+            discard(cached);
+        }
+        try (InputStream in = new BufferedInputStream(url.openStream())) {
+            return MidiSystem.getSoundbank(in);
+        }
+    }
+
+    /**
+     * Copies a resource to the cache unless an up-to-date copy is already there. The stamp is written last, so a copy
+     * interrupted halfway is never trusted.
+     */
+    private static void extract(URL url, Path cached) throws IOException {
+        Path stamp = stampOf(cached);
+        URLConnection connection = url.openConnection();
+        long size = connection.getContentLengthLong();
+        String expectedStamp = size + " " + connection.getLastModified();
+        if (Files.isRegularFile(cached) && Files.size(cached) == size
+                && Files.isRegularFile(stamp) && expectedStamp.equals(Files.readString(stamp))) {
+            return;
+        }
+        Files.createDirectories(DEFAULT_CACHE_DIRECTORY);
+        Files.deleteIfExists(stamp);
+        Path temporary = Files.createTempFile(DEFAULT_CACHE_DIRECTORY, cached.getFileName().toString(), ".tmp");
+        try (InputStream in = connection.getInputStream()) {
+            Files.copy(in, temporary, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temporary, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        Files.writeString(stamp, expectedStamp);
+    }
+
+    /**
+     * Deletes a cached copy and its stamp, so the next session extracts the resource again.
+     */
+    private static void discard(Path cached) {
+        try {
+            Files.deleteIfExists(stampOf(cached));
+            Files.deleteIfExists(cached);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Cannot delete the cached soundbank " + cached, e);
+        }
+    }
+
+    private static Path stampOf(Path cached) {
+        return cached.resolveSibling(cached.getFileName() + STAMP_SUFFIX);
+    }
+
+    /**
+     * Tells whether a soundbank has an instrument for every given program of bank 0.
+     *
+     * @param soundbank The soundbank.
+     * @param programs  The program numbers.
+     * @return {@code true} if no program is missing.
+     */
+    public static boolean hasPrograms(Soundbank soundbank, int[] programs) {
+        return missingPrograms(soundbank, programs).length == 0;
+    }
+
+    /**
+     * Returns the given programs of bank 0 for which a soundbank has no instrument.
+     *
+     * @param soundbank The soundbank.
+     * @param programs  The program numbers.
+     * @return The missing program numbers, in the given order.
+     */
+    public static int[] missingPrograms(Soundbank soundbank, int[] programs) {
+        return Arrays.stream(programs)
+                .filter(program -> soundbank.getInstrument(new Patch(0, program)) == null)
+                .toArray();
+    }
+
+    /**
+     * Loads into a synthesizer only the instruments of the given programs of bank 0.
+     *
+     * @param synthesizer The synthesizer.
+     * @param soundbank   The soundbank providing the instruments.
+     * @param programs    The program numbers.
+     * @return The number of instruments loaded; programs missing from the soundbank are skipped.
+     */
+    public static int loadPrograms(Synthesizer synthesizer, Soundbank soundbank, int[] programs) {
+        int loaded = 0;
+        for (int program : programs) {
+            Instrument instrument = soundbank.getInstrument(new Patch(0, program));
+            if (instrument != null && synthesizer.loadInstrument(instrument)) {
+                loaded++;
+            }
+        }
+        return loaded;
+    }
+}
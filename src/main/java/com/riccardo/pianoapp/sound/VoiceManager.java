@@ -0,0 +1,150 @@
+package com.riccardo.pianoapp.sound;
+
+import java.util.Locale;
+
+/**
+ * Keeps the number of notes played at the same time within a polyphony limit.
+ * <p>
+ * Each note played is registered as a voice; when the limit is reached, the voice chosen by the {@link StealPolicy}
+ * is given up to make room for the new one, and the caller releases it. This bounds the work of the synthesizer on
+ * very dense files, where it would otherwise drop voices in its own, unpredictable way.
+ * <p>
+ * The limit and the policy can be set with the system properties {@value #POLYPHONY_PROPERTY} and
+ * {@value #STEAL_POLICY_PROPERTY}. Instances are not thread-safe and are used by a single playback thread.
+ */
+public class VoiceManager {
+    public static final int DEFAULT_POLYPHONY = 64;
+    public static final String POLYPHONY_PROPERTY = "pianoapp.polyphony";
+    public static final String STEAL_POLICY_PROPERTY = "pianoapp.voiceStealing";
+
+    /**
+     * Which voice is given up when the polyphony limit is reached.
+     */
+    public enum StealPolicy {
+        /**
+         * The voice that started first.
+         */
+        OLDEST,
+        /**
+         * The voice with the lowest velocity; the oldest one among equals.
+         */
+        QUIETEST
+    }
+
+    private final int polyphony;
+    private final StealPolicy policy;
+    private final int[] ids;
+    private final int[] velocities;
+    private final long[] ages;
+    private int size;
+    private long nextAge;
+    private volatile long stolenVoices;
+
+    /**
+     * Constructor for VoiceManager.
+     *
+     * @param polyphony The maximum number of voices.
+     * @param policy    The voice stealing policy.
+     */
+    public VoiceManager(int polyphony, StealPolicy policy) {
+        if (polyphony <= 0) {
+            throw new IllegalArgumentException("Polyphony must be positive: " + polyphony);
+        }
+        this.polyphony = polyphony;
+        this.policy = policy;
+        this.ids = new int[polyphony];
+        this.velocities = new int[polyphony];
+        this.ages = new long[polyphony];
+    }
+
+    /**
+     * Creates a voice manager configured by the system properties, or with the defaults.
+     *
+     * @return The voice manager.
+     */
+    public static VoiceManager fromSystemProperties() {
+        int polyphony = Integer.getInteger(POLYPHONY_PROPERTY, DEFAULT_POLYPHONY);
+        String policy = System.getProperty(STEAL_POLICY_PROPERTY, StealPolicy.OLDEST.name());
+        return new VoiceManager(polyphony, StealPolicy.valueOf(policy.toUpperCase(Locale.ROOT)));
+    }
+
+    /**
+     * Registers a new voice, stealing one if the limit has been reached. The caller must release the stolen note.
+     *
+     * @param id       The identifier of the note, e.g. its index in the schedule.
+     * @param velocity The velocity of the note.
+     * @return The identifier of the stolen voice, or -1 if no voice was stolen.
+     */
+    public int allocate(int id, int velocity) {
+        int slot = size;
+        int stolen = -1;
+        if (size == polyphony) {
+            slot = selectVictim();
+            stolen = ids[slot];
+            stolenVoices++;
+        } else {
+            size++;
+        }
+        ids[slot] = id;
+        velocities[slot] = velocity;
+        ages[slot] = nextAge++;
+        return stolen;
+    }
+
+    /**
+     * Removes a voice whose note has ended.
+     *
+     * @param id The identifier of the note.
+     * @return {@code true} if the voice was active, {@code false} if it had been stolen or never registered.
+     */
+    public boolean release(int id) {
+        for (int slot = 0; slot < size; slot++) {
+            if (ids[slot] == id) {
+                size--;
+                ids[slot] = ids[size];
+                velocities[slot] = velocities[size];
+                ages[slot] = ages[size];
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes every voice.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getPolyphony() {
+        return polyphony;
+    }
+
+    public StealPolicy getPolicy() {
+        return policy;
+    }
+
+    public long getStolenVoices() {
+        return stolenVoices;
+    }
+
+    private int selectVictim() {
+        int victim = 0;
+        for (int slot = 1; slot < size; slot++) {
+            boolean better = switch (policy) {
+                case OLDEST -> ages[slot] < ages[victim];
+                case QUIETEST -> velocities[slot] < velocities[victim]
+                        || (velocities[slot] == velocities[victim] && ages[slot] < ages[victim]);
+            };
+            if (better) {
+                victim = slot;
+            }
+        }
+        return victim;
+    }
+}
@@ -12,11 +12,6 @@ public class PausedState implements PlaybackState {
 
     @Override
     public void pause(PianoController pianoController) {
-        pianoController.stopPlayback();
-        pianoController.pauseTime = System.currentTimeMillis();
-        pianoController.animationManager.stopAnimations();
-        pianoController.changePlaybackState(new PausedState());
-        pianoController.setIsPlaying(false);
     }
 
 
@@ -24,7 +19,7 @@ public class PausedState implements PlaybackState {
     public void stop(PianoController pianoController) {
         pianoController.changePlaybackState(new StoppedState());
         pianoController.setIsPlaying(false);
-        pianoController.resetPlayback();
+        pianoController.stopPlayback();
     }
 }
 
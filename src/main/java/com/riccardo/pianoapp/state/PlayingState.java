@@ -11,14 +11,14 @@ public class PlayingState implements PlaybackState {
     public void pause(PianoController pianoController) {
         pianoController.changePlaybackState(new PausedState());
         pianoController.setIsPlaying(false);
-        pianoController.resetPlayback();
+        pianoController.pausePlayback();
     }
 
     @Override
     public void stop(PianoController pianoController) {
         pianoController.changePlaybackState(new StoppedState());
         pianoController.setIsPlaying(false);
-        pianoController.resetPlayback();
+        pianoController.stopPlayback();
     }
 }
 
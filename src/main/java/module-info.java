@@ -2,14 +2,20 @@ module com.riccardo.pianomidi {
     requires javafx.controls;
     requires javafx.fxml;
     requires java.desktop;
+    requires java.management;
+    requires java.logging;
 
 
     opens com.riccardo.pianoapp to javafx.fxml;
     exports com.riccardo.pianoapp;
     exports com.riccardo.pianoapp.animation;
     opens com.riccardo.pianoapp.animation to javafx.fxml;
+    exports com.riccardo.pianoapp.metrics;
+    opens com.riccardo.pianoapp.metrics to javafx.fxml;
     exports com.riccardo.pianoapp.midi;
     opens com.riccardo.pianoapp.midi to javafx.fxml;
+    exports com.riccardo.pianoapp.render;
+    opens com.riccardo.pianoapp.render to javafx.fxml;
     exports com.riccardo.pianoapp.recording;
     opens com.riccardo.pianoapp.recording to javafx.fxml;
     exports com.riccardo.pianoapp.sound;
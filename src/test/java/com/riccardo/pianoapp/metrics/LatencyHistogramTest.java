@@ -0,0 +1,88 @@
+package com.riccardo.pianoapp.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    /**
+     * Returns the bounds of the only bucket of a histogram holding a single value.
+     */
+    private static long[] bucketOf(long nanos) {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        histogram.record(nanos);
+        StringBuilder buckets = new StringBuilder();
+        histogram.appendBuckets(buckets);
+        String[] lines = buckets.toString().split("\n");
+        assertEquals(1, lines.length);
+        String[] fields = lines[0].split(",");
+        assertEquals("1", fields[3]);
+        return new long[]{Long.parseLong(fields[1]), Long.parseLong(fields[2])};
+    }
+
+    @Test
+    void smallValuesHaveTheirOwnBucket() {
+        for (long value = 0; value < 64; value++) {
+            long[] bounds = bucketOf(value);
+            assertEquals(value, bounds[0]);
+            assertEquals(value, bounds[1]);
+        }
+    }
+
+    @Test
+    void bucketsHoldTheirValueWithinThreePercent() {
+        for (long value = 64; value < 1L << 40; value = value * 3 / 2 + 7) {
+            long[] bounds = bucketOf(value);
+            assertTrue(bounds[0] <= value && value <= bounds[1], value + " not in " + bounds[0] + "-" + bounds[1]);
+            assertTrue(bounds[1] - bounds[0] + 1 <= bounds[0] / 32, "bucket too wide for " + value);
+        }
+    }
+
+    @Test
+    void bucketsAreContiguous() {
+        for (int magnitude = 6; magnitude < 40; magnitude++) {
+            long powerOfTwo = 1L << magnitude;
+            assertEquals(bucketOf(powerOfTwo - 1)[1] + 1, bucketOf(powerOfTwo)[0]);
+            assertEquals(powerOfTwo, bucketOf(powerOfTwo)[0]);
+        }
+    }
+
+    @Test
+    void outOfRangeValuesAreClamped() {
+        assertEquals(0, bucketOf(-5)[0]);
+        long[] bounds = bucketOf(Long.MAX_VALUE);
+        assertEquals((1L << 40) - 1, bounds[1]);
+    }
+
+    @Test
+    void quantilesAreReportedWithinTheirBucket() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500_500.0, histogram.getMeanNanos(), 1e-6);
+        assertEquals(500_000, histogram.getP50Nanos(), 500_000 / 32.0);
+        assertEquals(990_000, histogram.getP99Nanos(), 990_000 / 32.0);
+        assertEquals(1_000_000, histogram.getMaxNanos());
+        assertEquals(1_000_000, histogram.getValueAtQuantile(1.0));
+        assertTrue(histogram.getP999Nanos() <= histogram.getMaxNanos());
+    }
+
+    @Test
+    void resetClearsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        histogram.record(12_345);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getP50Nanos());
+        assertEquals(0, histogram.getMaxNanos());
+        StringBuilder buckets = new StringBuilder();
+        histogram.appendBuckets(buckets);
+        assertEquals("", buckets.toString());
+    }
+}
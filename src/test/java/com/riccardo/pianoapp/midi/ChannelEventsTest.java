@@ -0,0 +1,130 @@
+package com.riccardo.pianoapp.midi;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ChannelEventsTest {
+    private static final int RESOLUTION = 480;
+
+    private static TempoMap defaultTempo() throws InvalidMidiDataException {
+        return TempoMap.build(new Sequence(Sequence.PPQ, RESOLUTION));
+    }
+
+    private static ShortMessage message(int command, int channel, int data1, int data2) throws InvalidMidiDataException {
+        return new ShortMessage(command, channel, data1, data2);
+    }
+
+    private static String describe(ChannelEvents events, int index) {
+        return events.getTick(index) + ":" + events.getCommand(index) + ":" + events.getChannel(index) + ":"
+                + events.getData1(index) + ":" + events.getData2(index);
+    }
+
+    @Test
+    void keepsOnlyProgramControllerAndPitchBendMessages() throws InvalidMidiDataException {
+        ChannelEvents.Builder builder = new ChannelEvents.Builder();
+        builder.add(0, message(ShortMessage.NOTE_ON, 0, 60, 100));
+        builder.add(0, message(ShortMessage.PROGRAM_CHANGE, 1, 40, 0));
+        builder.add(10, message(ShortMessage.CONTROL_CHANGE, 2, 64, 127));
+        builder.add(20, message(ShortMessage.CHANNEL_PRESSURE, 0, 50, 0));
+        builder.add(30, message(ShortMessage.PITCH_BEND, 3, 0, 80));
+
+        ChannelEvents events = builder.build(defaultTempo());
+
+        assertEquals(3, events.size());
+        assertEquals("0:192:1:40:0", describe(events, 0));
+        assertEquals("10:176:2:64:127", describe(events, 1));
+        assertEquals("30:224:3:0:80", describe(events, 2));
+        assertEquals(31_250.0, events.getMicros(2), 1e-6);
+    }
+
+    @Test
+    void eventsAreSortedByTickInInsertionOrder() throws InvalidMidiDataException {
+        ChannelEvents.Builder builder = new ChannelEvents.Builder();
+        builder.add(100, message(ShortMessage.CONTROL_CHANGE, 0, 7, 1));
+        builder.add(0, message(ShortMessage.CONTROL_CHANGE, 0, 7, 2));
+        builder.add(100, message(ShortMessage.CONTROL_CHANGE, 0, 7, 3));
+        builder.add(50, message(ShortMessage.CONTROL_CHANGE, 0, 7, 4));
+
+        ChannelEvents events = builder.build(defaultTempo());
+
+        int[] values = new int[events.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = events.getData2(i);
+        }
+        assertArrayEquals(new int[]{2, 4, 1, 3}, values);
+        assertEquals(0, events.firstIndexAtOrAfter(0));
+        assertEquals(2, events.firstIndexAtOrAfter(51));
+        assertEquals(2, events.firstIndexAtOrAfter(100));
+        assertEquals(4, events.firstIndexAtOrAfter(101));
+    }
+
+    @Test
+    void chaseSendsTheLastValueOfEachSlotWithControllersBeforePrograms() throws InvalidMidiDataException {
+        ChannelEvents.Builder builder = new ChannelEvents.Builder();
+        builder.add(0, message(ShortMessage.PROGRAM_CHANGE, 0, 5, 0));
+        builder.add(0, message(ShortMessage.CONTROL_CHANGE, 0, 7, 90));
+        builder.add(10, message(ShortMessage.PITCH_BEND, 1, 0, 70));
+        builder.add(20, message(ShortMessage.CONTROL_CHANGE, 0, 7, 60));
+        builder.add(20, message(ShortMessage.CONTROL_CHANGE, 0, 121, 0));
+        builder.add(30, message(ShortMessage.PROGRAM_CHANGE, 0, 6, 0));
+        builder.add(40, message(ShortMessage.CONTROL_CHANGE, 0, 0, 1));
+        ChannelEvents events = builder.build(defaultTempo());
+        int[] buffer = new int[ChannelEvents.CHASE_BUFFER_SIZE];
+
+        int count = events.getChaseEvents(events.firstIndexAtOrAfter(40), buffer);
+
+        List<String> chased = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            chased.add(describe(events, buffer[i]));
+        }
+        assertEquals(List.of("20:176:0:7:60", "30:192:0:6:0", "10:224:1:0:70"), chased);
+        assertEquals(0, events.getChaseEvents(0, buffer));
+    }
+
+    @Test
+    void chaseFromACheckpointMatchesAFullScan() throws InvalidMidiDataException {
+        Random random = new Random(7);
+        ChannelEvents.Builder builder = new ChannelEvents.Builder();
+        int[] commands = {ShortMessage.PROGRAM_CHANGE, ShortMessage.CONTROL_CHANGE, ShortMessage.PITCH_BEND};
+        for (int i = 0; i < 2000; i++) {
+            int command = commands[random.nextInt(commands.length)];
+            builder.add(i / 3, message(command, random.nextInt(16), random.nextInt(128), random.nextInt(128)));
+        }
+        ChannelEvents events = builder.build(defaultTempo());
+        int[] buffer = new int[ChannelEvents.CHASE_BUFFER_SIZE];
+
+        for (int endIndex : new int[]{0, 1, 255, 256, 257, 511, 512, 1000, 1999, 2000}) {
+            int count = events.getChaseEvents(endIndex, buffer);
+            assertArrayEquals(fullScan(events, endIndex), Arrays.copyOf(buffer, count), "chase before " + endIndex);
+        }
+    }
+
+    /**
+     * The last event of each channel and chased slot before {@code endIndex}, by scanning every earlier event.
+     */
+    private static int[] fullScan(ChannelEvents events, int endIndex) {
+        int[] last = new int[16 * 130];
+        Arrays.fill(last, -1);
+        for (int i = 0; i < endIndex; i++) {
+            int slot = switch (events.getCommand(i)) {
+                case ShortMessage.PROGRAM_CHANGE -> 128;
+                case ShortMessage.PITCH_BEND -> 129;
+                default -> events.getData1(i) < 120 ? events.getData1(i) : -1;
+            };
+            if (slot >= 0) {
+                last[events.getChannel(i) * 130 + slot] = i;
+            }
+        }
+        return Arrays.stream(last).filter(index -> index >= 0).toArray();
+    }
+}
@@ -0,0 +1,180 @@
+package com.riccardo.pianoapp.midi;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class NoteScheduleTest {
+    private static final int RESOLUTION = 480;
+
+    @Test
+    void pairsNotesOnTheSameKeyLastInFirstOut() throws InvalidMidiDataException {
+        Sequence sequence = new Sequence(Sequence.PPQ, RESOLUTION);
+        Track track = sequence.createTrack();
+        track.add(event(ShortMessage.NOTE_ON, 0, 60, 100, 0));
+        track.add(event(ShortMessage.NOTE_ON, 0, 60, 90, 10));
+        track.add(event(ShortMessage.NOTE_OFF, 0, 60, 0, 20));
+        track.add(event(ShortMessage.NOTE_OFF, 0, 60, 0, 30));
+
+        NoteSchedule schedule = NoteSchedule.compile(sequence);
+
+        assertEquals(2, schedule.size());
+        assertEquals(List.of("0-30:60:100", "10-20:60:90"), notes(schedule));
+    }
+
+    @Test
+    void noteOnWithVelocityZeroEndsTheNote() throws InvalidMidiDataException {
+        Sequence sequence = new Sequence(Sequence.PPQ, RESOLUTION);
+        Track track = sequence.createTrack();
+        track.add(event(ShortMessage.NOTE_ON, 0, 60, 100, 0));
+        track.add(event(ShortMessage.NOTE_ON, 0, 60, 0, 120));
+
+        NoteSchedule schedule = NoteSchedule.compile(sequence);
+
+        assertEquals(List.of("0-120:60:100"), notes(schedule));
+        assertEquals(120, schedule.getDurationTicks(0));
+    }
+
+    @Test
+    void keysArePairedPerChannel() throws InvalidMidiDataException {
+        Sequence sequence = new Sequence(Sequence.PPQ, RESOLUTION);
+        Track track = sequence.createTrack();
+        track.add(event(ShortMessage.NOTE_ON, 0, 60, 100, 0));
+        track.add(event(ShortMessage.NOTE_ON, 1, 60, 100, 10));
+        track.add(event(ShortMessage.NOTE_OFF, 0, 60, 0, 20));
+        track.add(event(ShortMessage.NOTE_OFF, 1, 60, 0, 40));
+
+        NoteSchedule schedule = NoteSchedule.compile(sequence);
+
+        assertEquals(List.of("0-20:60:100", "10-40:60:100"), notes(schedule));
+        assertEquals(0, schedule.getChannel(0));
+        assertEquals(1, schedule.getChannel(1));
+    }
+
+    @Test
+    void unreleasedNoteEndsWithItsTrack() throws InvalidMidiDataException {
+        Sequence sequence = new Sequence(Sequence.PPQ, RESOLUTION);
+        Track first = sequence.createTrack();
+        first.add(event(ShortMessage.NOTE_ON, 0, 60, 100, 0));
+        first.add(event(ShortMessage.CONTROL_CHANGE, 0, 7, 100, 50));
+        // A release in another track does not end the note.
+        Track second = sequence.createTrack();
+        second.add(event(ShortMessage.NOTE_OFF, 0, 60, 0, 10));
+        second.add(event(ShortMessage.NOTE_ON, 0, 64, 100, 100));
+
+        NoteSchedule schedule = NoteSchedule.compile(sequence);
+
+        assertEquals(List.of("0-50:60:100", "100-100:64:100"), notes(schedule));
+    }
+
+    @Test
+    void tracksAreMergedInStartOrder() throws InvalidMidiDataException {
+        Sequence sequence = new Sequence(Sequence.PPQ, RESOLUTION);
+        Track first = sequence.createTrack();
+        first.add(event(ShortMessage.NOTE_ON, 0, 60, 100, 20));
+        first.add(event(ShortMessage.NOTE_OFF, 0, 60, 0, 30));
+        Track second = sequence.createTrack();
+        second.add(event(ShortMessage.NOTE_ON, 1, 62, 100, 10));
+        second.add(event(ShortMessage.NOTE_ON, 1, 64, 100, 20));
+        second.add(event(ShortMessage.NOTE_OFF, 1, 62, 0, 30));
+        second.add(event(ShortMessage.NOTE_OFF, 1, 64, 0, 30));
+
+        NoteSchedule schedule = NoteSchedule.compile(sequence);
+
+        // Notes starting at the same tick keep the order of their tracks.
+        assertEquals(List.of("10-30:62:100", "20-30:60:100", "20-30:64:100"), notes(schedule));
+        assertEquals(1, schedule.firstIndexAtOrAfter(11));
+        assertEquals(3, schedule.firstIndexAtOrAfter(21));
+    }
+
+    @Test
+    void heldNotesMatchAFullSearch() throws InvalidMidiDataException {
+        // Enough notes for several checkpoints, with durations spanning more than one of them.
+        Sequence sequence = new Sequence(Sequence.PPQ, RESOLUTION);
+        Track track = sequence.createTrack();
+        SplittableRandom random = new SplittableRandom(42);
+        long tick = 0;
+        for (int i = 0; i < 2000; i++) {
+            tick += random.nextInt(20);
+            int key = 21 + random.nextInt(88);
+            track.add(event(ShortMessage.NOTE_ON, 0, key, 100, tick));
+            track.add(event(ShortMessage.NOTE_OFF, 0, key, 0, tick + 1 + random.nextInt(random.nextInt(10) == 0 ? 20_000 : 200)));
+        }
+
+        NoteSchedule schedule = NoteSchedule.compile(sequence);
+
+        for (long at = 0; at <= schedule.getLengthTicks(); at += 7) {
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < schedule.size(); i++) {
+                if (schedule.getStartTick(i) < at && schedule.getEndTick(i) > at) {
+                    expected.add(i);
+                }
+            }
+            assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), schedule.getHeldNotes(at), "tick " + at);
+        }
+    }
+
+    @Test
+    void sliceCutsTheNotesHeldAcrossItsEnds() throws InvalidMidiDataException {
+        Sequence sequence = new Sequence(Sequence.PPQ, RESOLUTION);
+        Track track = sequence.createTrack();
+        track.add(event(ShortMessage.NOTE_ON, 0, 60, 100, 0));
+        track.add(event(ShortMessage.NOTE_ON, 0, 62, 90, 100));
+        track.add(event(ShortMessage.NOTE_OFF, 0, 60, 0, 150));
+        track.add(event(ShortMessage.NOTE_ON, 0, 64, 80, 200));
+        track.add(event(ShortMessage.NOTE_OFF, 0, 62, 0, 250));
+        track.add(event(ShortMessage.NOTE_OFF, 0, 64, 0, 500));
+        track.add(event(ShortMessage.NOTE_ON, 0, 65, 80, 400));
+        track.add(event(ShortMessage.NOTE_OFF, 0, 65, 0, 450));
+
+        NoteSchedule slice = NoteSchedule.compile(sequence).slice(120, 300);
+
+        assertEquals(List.of("120-150:60:100", "120-250:62:90", "200-300:64:80"), notes(slice));
+        assertEquals(300, slice.getLengthTicks());
+        assertEquals(slice.getTempoMap().tickToMicros(120), slice.getStartMicros(0), 1e-6);
+        assertThrows(IllegalArgumentException.class, () -> NoteSchedule.compile(sequence).slice(300, 300));
+    }
+
+    @Test
+    void sliceStartsWithTheChannelStateAtItsStart() throws InvalidMidiDataException {
+        Sequence sequence = new Sequence(Sequence.PPQ, RESOLUTION);
+        Track track = sequence.createTrack();
+        track.add(event(ShortMessage.PROGRAM_CHANGE, 0, 5, 0, 0));
+        track.add(event(ShortMessage.CONTROL_CHANGE, 0, 7, 80, 10));
+        track.add(event(ShortMessage.PROGRAM_CHANGE, 0, 6, 0, 50));
+        // Set for the first time inside the slice: reset to its default when the slice starts over.
+        track.add(event(ShortMessage.CONTROL_CHANGE, 0, 64, 127, 150));
+        track.add(event(ShortMessage.PROGRAM_CHANGE, 0, 7, 0, 300));
+
+        ChannelEvents events = NoteSchedule.compile(sequence).slice(100, 200).getChannelEvents();
+
+        List<String> messages = new ArrayList<>();
+        for (int i = 0; i < events.size(); i++) {
+            messages.add(events.getTick(i) + ":" + events.getCommand(i) + ":" + events.getData1(i) + ":" + events.getData2(i));
+        }
+        assertEquals(List.of("100:176:7:80", "100:176:64:0", "100:192:6:0", "150:176:64:127"), messages);
+    }
+
+    private static MidiEvent event(int command, int channel, int data1, int data2, long tick) throws InvalidMidiDataException {
+        return new MidiEvent(new ShortMessage(command, channel, data1, data2), tick);
+    }
+
+    private static List<String> notes(NoteSchedule schedule) {
+        List<String> notes = new ArrayList<>();
+        for (int i = 0; i < schedule.size(); i++) {
+            notes.add(schedule.getStartTick(i) + "-" + schedule.getEndTick(i) + ":" + schedule.getKey(i) + ":" + schedule.getVelocity(i));
+        }
+        return notes;
+    }
+}
@@ -0,0 +1,103 @@
+package com.riccardo.pianoapp.midi;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlaybackClockTest {
+    private long now = 1_000_000_000L;
+    private final PlaybackClock clock = new PlaybackClock(() -> now);
+
+    private void advanceMillis(long millis) {
+        now += millis * 1_000_000L;
+    }
+
+    @Test
+    void staysPausedUntilStarted() {
+        advanceMillis(500);
+
+        assertTrue(clock.isPaused());
+        assertEquals(0.0, clock.getPositionMicros(), 1e-6);
+        assertEquals(Long.MAX_VALUE, clock.toNanoTime(1000));
+    }
+
+    @Test
+    void advancesFromTheStartPosition() {
+        clock.start(2_000_000);
+        advanceMillis(250);
+
+        assertFalse(clock.isPaused());
+        assertEquals(2_250_000.0, clock.getPositionMicros(), 1e-6);
+        assertEquals(2_100_000.0, clock.getPositionMicros(now - 150_000_000L), 1e-6);
+    }
+
+    @Test
+    void pauseFreezesThePositionAndResumeContinuesFromIt() {
+        clock.start(0);
+        advanceMillis(100);
+        clock.pause();
+        advanceMillis(1000);
+
+        assertEquals(100_000.0, clock.getPositionMicros(), 1e-6);
+
+        clock.pause();
+        clock.resume();
+        advanceMillis(50);
+
+        assertEquals(150_000.0, clock.getPositionMicros(), 1e-6);
+    }
+
+    @Test
+    void resumeOfARunningClockKeepsItsAnchor() {
+        clock.start(0);
+        advanceMillis(100);
+        clock.resume();
+        advanceMillis(100);
+
+        assertEquals(200_000.0, clock.getPositionMicros(), 1e-6);
+    }
+
+    @Test
+    void rateChangeTakesEffectFromTheCurrentPosition() {
+        clock.start(0);
+        advanceMillis(100);
+        clock.setRate(2.0);
+        advanceMillis(100);
+
+        assertEquals(300_000.0, clock.getPositionMicros(), 1e-6);
+        assertEquals(now + 50_000_000L, clock.toNanoTime(400_000));
+
+        clock.pause();
+        clock.setRate(0.5);
+        advanceMillis(100);
+        assertEquals(300_000.0, clock.getPositionMicros(), 1e-6);
+
+        clock.resume();
+        advanceMillis(100);
+        assertEquals(350_000.0, clock.getPositionMicros(), 1e-6);
+        assertEquals(0.5, clock.getRate(), 1e-9);
+    }
+
+    @Test
+    void seekKeepsTheRunningState() {
+        clock.start(0);
+        clock.seek(5_000_000);
+        advanceMillis(10);
+        assertEquals(5_010_000.0, clock.getPositionMicros(), 1e-6);
+
+        clock.pause();
+        clock.seek(1_000_000);
+        advanceMillis(10);
+        assertTrue(clock.isPaused());
+        assertEquals(1_000_000.0, clock.getPositionMicros(), 1e-6);
+    }
+
+    @Test
+    void rejectsNonPositiveRates() {
+        assertThrows(IllegalArgumentException.class, () -> clock.setRate(0));
+        assertThrows(IllegalArgumentException.class, () -> clock.setRate(-1));
+    }
+}
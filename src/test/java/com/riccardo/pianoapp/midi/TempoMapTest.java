@@ -0,0 +1,95 @@
+package com.riccardo.pianoapp.midi;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.Sequence;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TempoMapTest {
+    // 500 ticks per quarter: the default tempo is 1000 us per tick, 1_000_000 us per quarter is 2000.
+    private static final int RESOLUTION = 500;
+
+    @Test
+    void defaultTempoWithoutTempoEvents() throws InvalidMidiDataException {
+        TempoMap tempoMap = TempoMap.build(new Sequence(Sequence.PPQ, RESOLUTION));
+
+        assertEquals(1, tempoMap.getSegmentCount());
+        assertEquals(120.0, tempoMap.getInitialBpm(), 1e-9);
+        assertEquals(500_000.0, tempoMap.tickToMicros(RESOLUTION), 1e-6);
+        assertEquals(RESOLUTION, tempoMap.microsToTick(500_000.0));
+    }
+
+    @Test
+    void convertsAcrossTempoChanges() throws InvalidMidiDataException {
+        Sequence sequence = new Sequence(Sequence.PPQ, RESOLUTION);
+        sequence.createTrack().add(tempo(1_000_000, 1000));
+
+        TempoMap tempoMap = TempoMap.build(sequence);
+
+        assertEquals(2, tempoMap.getSegmentCount());
+        assertEquals(1_000_000.0, tempoMap.tickToMicros(1000), 1e-6);
+        assertEquals(3_000_000.0, tempoMap.tickToMicros(2000), 1e-6);
+        assertEquals(2000, tempoMap.microsToTick(3_000_000.0));
+        assertEquals(1500, tempoMap.microsToTick(2_000_000.0));
+        assertEquals(999, tempoMap.microsToTick(999_999.0));
+        assertEquals(120.0, tempoMap.getBpmAt(999), 1e-9);
+        assertEquals(60.0, tempoMap.getBpmAt(1000), 1e-9);
+    }
+
+    @Test
+    void tempoEventsOfAllTracksAreMerged() throws InvalidMidiDataException {
+        Sequence sequence = new Sequence(Sequence.PPQ, RESOLUTION);
+        sequence.createTrack().add(tempo(1_000_000, 2000));
+        sequence.createTrack().add(tempo(250_000, 1000));
+
+        TempoMap tempoMap = TempoMap.build(sequence);
+
+        assertEquals(3, tempoMap.getSegmentCount());
+        assertEquals(1000, tempoMap.getSegmentTick(1));
+        assertEquals(2000, tempoMap.getSegmentTick(2));
+        // 1000 ticks at 1000 us, then 1000 ticks at 500 us, then 500 ticks at 2000 us.
+        assertEquals(2_500_000.0, tempoMap.tickToMicros(2500), 1e-6);
+    }
+
+    @Test
+    void lastTempoEventAtATickWins() throws InvalidMidiDataException {
+        Sequence sequence = new Sequence(Sequence.PPQ, RESOLUTION);
+        sequence.createTrack().add(tempo(250_000, 0));
+        sequence.getTracks()[0].add(tempo(1_000_000, 0));
+
+        TempoMap tempoMap = TempoMap.build(sequence);
+
+        assertEquals(1, tempoMap.getSegmentCount());
+        assertEquals(60.0, tempoMap.getInitialBpm(), 1e-9);
+    }
+
+    @Test
+    void smpteTicksHaveAFixedDuration() throws InvalidMidiDataException {
+        // 25 frames of 40 ticks per second: one tick per millisecond, whatever the tempo events say.
+        Sequence sequence = new Sequence(Sequence.SMPTE_25, 40);
+        sequence.createTrack().add(tempo(1_000_000, 100));
+
+        TempoMap tempoMap = TempoMap.build(sequence);
+
+        assertEquals(1, tempoMap.getSegmentCount());
+        assertEquals(1_000_000.0, tempoMap.tickToMicros(1000), 1e-6);
+        assertEquals(1000, tempoMap.microsToTick(1_000_000.0));
+    }
+
+    @Test
+    void malformedTempoEventsAreIgnored() throws InvalidMidiDataException {
+        Sequence sequence = new Sequence(Sequence.PPQ, RESOLUTION);
+        sequence.createTrack().add(new MidiEvent(new MetaMessage(TempoMap.TEMPO_META_TYPE, new byte[]{1}, 1), 100));
+
+        assertEquals(1, TempoMap.build(sequence).getSegmentCount());
+    }
+
+    static MidiEvent tempo(int microsPerQuarter, long tick) throws InvalidMidiDataException {
+        byte[] data = {(byte) (microsPerQuarter >> 16), (byte) (microsPerQuarter >> 8), (byte) microsPerQuarter};
+        return new MidiEvent(new MetaMessage(TempoMap.TEMPO_META_TYPE, data, data.length), tick);
+    }
+}
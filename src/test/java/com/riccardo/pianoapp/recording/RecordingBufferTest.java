@@ -0,0 +1,105 @@
+package com.riccardo.pianoapp.recording;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sound.midi.ShortMessage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecordingBufferTest {
+
+    @Test
+    void capacityMustBeAPowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new RecordingBuffer(0));
+        assertThrows(IllegalArgumentException.class, () -> new RecordingBuffer(1000));
+        assertEquals(1024, new RecordingBuffer(1024).getCapacity());
+    }
+
+    @Test
+    void drainsEventsInOfferOrder() {
+        RecordingBuffer buffer = new RecordingBuffer(8);
+        buffer.offer(100, ShortMessage.NOTE_ON, 60, 100);
+        buffer.offer(200, ShortMessage.CONTROL_CHANGE | 3, 64, 127);
+        buffer.offer(300, ShortMessage.NOTE_OFF, 60, 0);
+        assertEquals(3, buffer.getPending());
+
+        List<String> events = new ArrayList<>();
+        int drained = buffer.drain((nanos, command, data1, data2) -> events.add(nanos + ":" + command + ":" + data1 + ":" + data2));
+
+        assertEquals(3, drained);
+        assertEquals(List.of("100:144:60:100", "200:179:64:127", "300:128:60:0"), events);
+        assertEquals(0, buffer.getPending());
+        assertEquals(0, buffer.drain((nanos, command, data1, data2) -> { }));
+    }
+
+    @Test
+    void dropsAndCountsEventsWhenFull() {
+        RecordingBuffer buffer = new RecordingBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i, ShortMessage.NOTE_ON, 60 + i, 100));
+        }
+        assertFalse(buffer.offer(4, ShortMessage.NOTE_ON, 64, 100));
+        assertEquals(1, buffer.getDropped());
+
+        List<Long> drained = new ArrayList<>();
+        buffer.drain((nanos, command, data1, data2) -> drained.add(nanos));
+        assertEquals(List.of(0L, 1L, 2L, 3L), drained);
+
+        // The slots are free again once drained.
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i, ShortMessage.NOTE_OFF, 60 + i, 0));
+        }
+        assertEquals(4, buffer.drain((nanos, command, data1, data2) -> { }));
+        assertEquals(1, buffer.getDropped());
+    }
+
+    @Test
+    void concurrentProducersLoseNoEvents() throws InterruptedException {
+        int producers = 4;
+        int eventsPerProducer = 50_000;
+        RecordingBuffer buffer = new RecordingBuffer(256);
+        long[] lastSeen = new long[producers];
+        Arrays.fill(lastSeen, -1);
+        boolean[] ordered = {true};
+        long[] drained = {0};
+        RecordingBuffer.EventSink sink = (nanos, command, data1, data2) -> {
+            // Each producer sends its index as data1 and a growing counter as the time.
+            ordered[0] &= nanos > lastSeen[data1];
+            lastSeen[data1] = nanos;
+            drained[0]++;
+        };
+
+        AtomicBoolean producing = new AtomicBoolean(true);
+        Thread consumer = Thread.ofPlatform().start(() -> {
+            while (producing.get()) {
+                buffer.drain(sink);
+                Thread.onSpinWait();
+            }
+            buffer.drain(sink);
+        });
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < eventsPerProducer; i++) {
+                    buffer.offer(i, ShortMessage.NOTE_ON, producer, 100);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        producing.set(false);
+        consumer.join();
+
+        assertTrue(ordered[0]);
+        assertEquals((long) producers * eventsPerProducer, drained[0] + buffer.getDropped());
+    }
+}
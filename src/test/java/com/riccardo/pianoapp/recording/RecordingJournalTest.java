@@ -0,0 +1,122 @@
+package com.riccardo.pianoapp.recording;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecordingJournalTest {
+    private static final int RESOLUTION = 480;
+    private static final int MICROS_PER_QUARTER = 500_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void liveJournalIsNotRecovered() throws IOException {
+        try (RecordingJournal journal = RecordingJournal.create(directory, RESOLUTION, MICROS_PER_QUARTER)) {
+            journal.append(0, ShortMessage.NOTE_ON, 60, 100);
+            journal.sync();
+
+            assertTrue(RecordingJournal.recoverAll(directory).isEmpty());
+            assertTrue(Files.exists(journal.getPath()));
+
+            journal.append(480, ShortMessage.NOTE_OFF, 60, 0);
+        }
+    }
+
+    @Test
+    void crashedJournalIsRecovered() throws IOException, InvalidMidiDataException {
+        Path path;
+        try (RecordingJournal journal = RecordingJournal.create(directory, RESOLUTION, MICROS_PER_QUARTER)) {
+            journal.append(0, ShortMessage.NOTE_ON, 60, 100);
+            journal.append(240, ShortMessage.NOTE_ON, 64, 90);
+            journal.append(480, ShortMessage.NOTE_OFF, 60, 0);
+            path = journal.getPath();
+        }
+        // A crash leaves a torn last record; the lock is gone with the process.
+        try (var channel = Files.newByteChannel(path, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 0, 0}));
+        }
+
+        List<Path> recovered = RecordingJournal.recoverAll(directory);
+
+        assertEquals(1, recovered.size());
+        assertFalse(Files.exists(path));
+        Sequence sequence = MidiSystem.getSequence(recovered.get(0).toFile());
+        assertEquals(RESOLUTION, sequence.getResolution());
+        List<String> notes = new ArrayList<>();
+        Track track = sequence.getTracks()[0];
+        for (int i = 0; i < track.size(); i++) {
+            MidiEvent event = track.get(i);
+            if (event.getMessage() instanceof ShortMessage sm) {
+                notes.add(event.getTick() + ":" + sm.getCommand() + ":" + sm.getData1());
+            }
+        }
+        assertEquals(List.of("0:144:60", "240:144:64", "480:128:60"), notes);
+    }
+
+    @Test
+    void messagesWithOneDataByteAreWrittenWithoutPadding() throws IOException, InvalidMidiDataException {
+        Path path;
+        try (RecordingJournal journal = RecordingJournal.create(directory, RESOLUTION, MICROS_PER_QUARTER)) {
+            journal.append(0, ShortMessage.PROGRAM_CHANGE, 5, 0);
+            journal.append(0, ShortMessage.NOTE_ON, 60, 100);
+            journal.append(120, ShortMessage.CHANNEL_PRESSURE, 70, 0);
+            journal.append(240, ShortMessage.NOTE_OFF, 60, 0);
+            path = journal.getPath();
+        }
+        Path target = directory.resolve("take.mid");
+
+        assertEquals(4, RecordingJournal.writeMidiFile(path, target));
+
+        List<String> messages = new ArrayList<>();
+        Track track = MidiSystem.getSequence(target.toFile()).getTracks()[0];
+        for (int i = 0; i < track.size(); i++) {
+            MidiEvent event = track.get(i);
+            if (event.getMessage() instanceof ShortMessage sm) {
+                messages.add(event.getTick() + ":" + sm.getCommand() + ":" + sm.getData1() + ":" + sm.getData2());
+            }
+        }
+        assertEquals(List.of("0:192:5:0", "0:144:60:100", "120:208:70:0", "240:128:60:0"), messages);
+    }
+
+    @Test
+    void journalIsRecoveredOnceItsRecordingEnds() throws IOException {
+        RecordingJournal journal = RecordingJournal.create(directory, RESOLUTION, MICROS_PER_QUARTER);
+        journal.append(0, ShortMessage.NOTE_ON, 60, 100);
+        assertTrue(RecordingJournal.recoverAll(directory).isEmpty());
+
+        journal.close();
+
+        assertEquals(1, RecordingJournal.recoverAll(directory).size());
+        assertFalse(Files.exists(journal.getPath()));
+    }
+
+    @Test
+    void unreadableJournalIsKeptForLater() throws IOException {
+        Path foreign = Files.write(directory.resolve("take-1" + RecordingJournal.EXTENSION), new byte[]{1, 2, 3});
+        Path other = Files.write(directory.resolve("notes.txt"), new byte[]{1, 2, 3});
+
+        assertTrue(RecordingJournal.recoverAll(directory).isEmpty());
+        assertTrue(Files.exists(foreign));
+        assertTrue(Files.exists(other));
+        assertFalse(Files.exists(directory.resolve("recovered-take-1.mid")));
+    }
+}
@@ -0,0 +1,34 @@
+package com.riccardo.pianoapp.sound;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyHighlightsTest {
+    private final KeyHighlights highlights = new KeyHighlights(new HashMap<>(), new HashMap<>());
+
+    @Test
+    void keyStaysHighlightedUntilEverySourceRemovesIt() {
+        // Played back and held on an input device at the same time.
+        highlights.add(60);
+        highlights.add(60);
+
+        highlights.remove(60);
+        assertTrue(highlights.isHighlighted(60));
+
+        highlights.remove(60);
+        assertFalse(highlights.isHighlighted(60));
+    }
+
+    @Test
+    void extraRemovalsAreIgnored() {
+        highlights.remove(62);
+        highlights.add(62);
+
+        assertTrue(highlights.isHighlighted(62));
+        assertFalse(highlights.isHighlighted(61));
+    }
+}
@@ -0,0 +1,126 @@
+package com.riccardo.pianoapp.sound;
+
+import com.riccardo.pianoapp.recording.RecordingManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiChannel;
+import javax.sound.midi.ShortMessage;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MidiInputManagerTest {
+    private final BlockingQueue<String> played = new LinkedBlockingQueue<>();
+    private MidiInputManager inputManager;
+    private LoopbackTransmitter transmitter;
+
+    @TempDir
+    Path journalDirectory;
+
+    @BeforeEach
+    void setUp() {
+        // Records the calls made on the channel by the dispatch thread.
+        MidiChannel channel = (MidiChannel) Proxy.newProxyInstance(MidiChannel.class.getClassLoader(), new Class<?>[]{MidiChannel.class},
+                (proxy, method, args) -> {
+                    played.add(method.getName() + (args == null ? "" : Arrays.toString(args)));
+                    return method.getReturnType() == boolean.class ? false : method.getReturnType() == int.class ? 0 : null;
+                });
+        RecordingManager recordingManager = new RecordingManager(null, null, null, journalDirectory);
+        // No key buttons: the held state is checked without the JavaFX toolkit.
+        inputManager = new MidiInputManager(channel, recordingManager, new KeyHighlights(new HashMap<>(), new HashMap<>()));
+        transmitter = new LoopbackTransmitter();
+        inputManager.connect(transmitter);
+    }
+
+    @AfterEach
+    void tearDown() {
+        inputManager.close();
+    }
+
+    @Test
+    void notesArePlayedAndHeld() throws InterruptedException {
+        transmitter.noteOn(60, 100);
+        assertEquals("noteOn[60, 100]", next());
+        awaitDispatched();
+        assertTrue(inputManager.isKeyHeld(60));
+
+        transmitter.noteOff(60);
+        assertEquals("noteOff[60]", next());
+        awaitDispatched();
+        assertFalse(inputManager.isKeyHeld(60));
+    }
+
+    @Test
+    void noteOnWithVelocityZeroReleasesTheKey() throws InterruptedException {
+        transmitter.noteOn(64, 90);
+        assertEquals("noteOn[64, 90]", next());
+
+        transmitter.noteOn(64, 0);
+        assertEquals("noteOff[64]", next());
+        awaitDispatched();
+        assertFalse(inputManager.isKeyHeld(64));
+    }
+
+    @Test
+    void keyStaysHeldUntilEveryPressIsReleased() throws InterruptedException {
+        // The same key pressed on two devices.
+        LoopbackTransmitter second = new LoopbackTransmitter();
+        inputManager.connect(second);
+        transmitter.noteOn(67, 100);
+        second.noteOn(67, 100);
+        transmitter.noteOff(67);
+        awaitDispatched();
+        assertTrue(inputManager.isKeyHeld(67));
+
+        second.noteOff(67);
+        // A release without a press does not make the count negative.
+        second.noteOff(67);
+        awaitDispatched();
+        assertFalse(inputManager.isKeyHeld(67));
+        transmitter.noteOn(67, 100);
+        awaitDispatched();
+        assertTrue(inputManager.isKeyHeld(67));
+    }
+
+    @Test
+    void closedTransmitterIsDisconnected() throws InterruptedException {
+        transmitter.close();
+        transmitter.noteOn(60, 100);
+
+        assertNull(played.poll(100, TimeUnit.MILLISECONDS));
+        assertFalse(inputManager.isKeyHeld(60));
+    }
+
+    private String next() throws InterruptedException {
+        return played.poll(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Sends a marker through the input path and waits for it, so every message sent before has been dispatched.
+     */
+    private void awaitDispatched() throws InterruptedException {
+        try {
+            transmitter.send(new ShortMessage(ShortMessage.CONTROL_CHANGE, 0, 119, 0));
+        } catch (InvalidMidiDataException e) {
+            throw new IllegalStateException(e);
+        }
+        String call;
+        do {
+            call = next();
+        } while (call != null && !call.equals("controlChange[119, 0]"));
+        assertEquals("controlChange[119, 0]", call);
+    }
+}
@@ -0,0 +1,81 @@
+package com.riccardo.pianoapp.sound;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VoiceManagerTest {
+
+    @Test
+    void stealsNothingWithinThePolyphony() {
+        VoiceManager voices = new VoiceManager(3, VoiceManager.StealPolicy.OLDEST);
+
+        assertEquals(-1, voices.allocate(1, 100));
+        assertEquals(-1, voices.allocate(2, 100));
+        assertEquals(-1, voices.allocate(3, 100));
+
+        assertEquals(3, voices.size());
+        assertEquals(0, voices.getStolenVoices());
+    }
+
+    @Test
+    void oldestPolicyStealsTheVoiceThatStartedFirst() {
+        VoiceManager voices = new VoiceManager(3, VoiceManager.StealPolicy.OLDEST);
+        voices.allocate(1, 10);
+        voices.allocate(2, 100);
+        voices.allocate(3, 50);
+
+        assertEquals(1, voices.allocate(4, 100));
+        assertEquals(2, voices.allocate(5, 100));
+        assertTrue(voices.release(3));
+        assertEquals(-1, voices.allocate(6, 100));
+        assertEquals(4, voices.allocate(7, 100));
+
+        assertEquals(3, voices.size());
+        assertEquals(3, voices.getStolenVoices());
+    }
+
+    @Test
+    void quietestPolicyStealsTheLowestVelocityAndTheOldestAmongEquals() {
+        VoiceManager voices = new VoiceManager(3, VoiceManager.StealPolicy.QUIETEST);
+        voices.allocate(1, 80);
+        voices.allocate(2, 40);
+        voices.allocate(3, 40);
+
+        assertEquals(2, voices.allocate(4, 90));
+        assertEquals(3, voices.allocate(5, 90));
+        assertEquals(1, voices.allocate(6, 90));
+        assertEquals(4, voices.allocate(7, 90));
+    }
+
+    @Test
+    void stolenVoicesAreNoLongerReleased() {
+        VoiceManager voices = new VoiceManager(1, VoiceManager.StealPolicy.OLDEST);
+        voices.allocate(1, 100);
+        voices.allocate(2, 100);
+
+        assertFalse(voices.release(1));
+        assertTrue(voices.release(2));
+        assertFalse(voices.release(2));
+        assertEquals(0, voices.size());
+    }
+
+    @Test
+    void clearRemovesEveryVoice() {
+        VoiceManager voices = new VoiceManager(2, VoiceManager.StealPolicy.OLDEST);
+        voices.allocate(1, 100);
+        voices.allocate(2, 100);
+        voices.clear();
+
+        assertEquals(0, voices.size());
+        assertEquals(-1, voices.allocate(3, 100));
+    }
+
+    @Test
+    void rejectsNonPositivePolyphony() {
+        assertThrows(IllegalArgumentException.class, () -> new VoiceManager(0, VoiceManager.StealPolicy.OLDEST));
+    }
+}